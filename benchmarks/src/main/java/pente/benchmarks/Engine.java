@@ -0,0 +1,156 @@
+package pente.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Handles onto the engine. The engine classes live in the default package, which cannot be imported from a named one,
+ * and JMH refuses benchmarks in the default package. So the benchmarks call the engine through method handles held in
+ * static finals, which the JIT inlines like direct calls. Every handle takes and returns engine objects as Object
+ */
+final class Engine {
+
+    static final Object WHITE;
+
+    static final Object BLACK;
+
+    /* (Configuration) -> MoveManager */
+    static final MethodHandle NEW_MOVE_MANAGER;
+
+    /* (MoveManager) -> MoveManager, a copy */
+    static final MethodHandle COPY_MOVE_MANAGER;
+
+    /* (MoveManager, Player) -> List<Move> */
+    static final MethodHandle GET_NEXT_MOVES;
+
+    /* (MoveManager, Player, int[]) -> int */
+    static final MethodHandle GENERATE_MOVES;
+
+    /* (MoveManager, Player, int, int) -> Move */
+    static final MethodHandle INIT_MOVE;
+
+    /* (MoveManager, Player, int, int) -> int */
+    static final MethodHandle ENCODE_MOVE;
+
+    /* (MoveManager, int) -> void */
+    static final MethodHandle COMMIT;
+
+    /* (MoveManager, int) -> void */
+    static final MethodHandle ROLLBACK;
+
+    /* (MoveManager) -> long */
+    static final MethodHandle EVALUATE;
+
+    /* (MoveManager, int) -> boolean, isWinningMove for our moves */
+    static final MethodHandle HAVE_WE_WON;
+
+    /* (int) -> int, the cell index of an encoded move */
+    static final MethodHandle GET_CELL;
+
+    /* () -> TranspositionTable, of the default size and policy */
+    static final MethodHandle NEW_TABLE;
+
+    /* (TranspositionTable) -> void */
+    static final MethodHandle CLEAR_TABLE;
+
+    /* (MoveManager, Player, TranspositionTable, int threads) -> PenteAgent, in root split mode */
+    static final MethodHandle NEW_AGENT;
+
+    /* (PenteAgent, long timeLimitMillis, int depthLimit) -> Move */
+    static final MethodHandle GET_BEST_MOVE;
+
+    /* (PenteAgent) -> long */
+    static final MethodHandle GET_NODES;
+
+    /* (Configuration) -> Player */
+    static final MethodHandle GET_PLAYER;
+
+    private static final MethodHandle READ_CONFIGURATION;
+
+    private static final Object FILE_HANDLER;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> configuration = Class.forName("homework$Configuration");
+            Class<?> moveManager = Class.forName("homework$MoveManager");
+            Class<?> player = Class.forName("homework$Player");
+            Class<?> move = Class.forName("homework$Move");
+            Class<?> agent = Class.forName("homework$PenteAgent");
+            Class<?> table = Class.forName("homework$TranspositionTable");
+            Class<?> policy = Class.forName("homework$ReplacementPolicy");
+            Class<?> parallelMode = Class.forName("homework$ParallelMode");
+            Class<?> fileHandler = Class.forName("homework$FileHandler");
+            Class<?> constants = Class.forName("homework$Constants");
+
+            WHITE = player.getField("WHITE").get(null);
+            BLACK = player.getField("BLACK").get(null);
+
+            NEW_MOVE_MANAGER = generic(lookup.findConstructor(moveManager, MethodType.methodType(void.class, configuration)));
+            COPY_MOVE_MANAGER = generic(lookup.findConstructor(moveManager, MethodType.methodType(void.class, moveManager)));
+            GET_NEXT_MOVES = generic(lookup.findVirtual(moveManager, "getNextMoves", MethodType.methodType(List.class, player)));
+            GENERATE_MOVES = generic(lookup.findVirtual(moveManager, "generateMoves", MethodType.methodType(int.class, player, int[].class)));
+            INIT_MOVE = generic(lookup.findVirtual(moveManager, "initMove", MethodType.methodType(move, player, int.class, int.class)));
+            ENCODE_MOVE = generic(lookup.findVirtual(moveManager, "encodeMove", MethodType.methodType(int.class, player, int.class, int.class)));
+            COMMIT = generic(lookup.findVirtual(moveManager, "commit", MethodType.methodType(void.class, int.class)));
+            ROLLBACK = generic(lookup.findVirtual(moveManager, "rollback", MethodType.methodType(void.class, int.class)));
+            EVALUATE = generic(lookup.findVirtual(moveManager, "evaluate", MethodType.methodType(long.class)));
+            HAVE_WE_WON = generic(lookup.findVirtual(moveManager, "haveWeWon", MethodType.methodType(boolean.class, int.class)));
+            GET_BEST_MOVE = generic(lookup.findVirtual(agent, "getBestMove", MethodType.methodType(move, long.class, int.class)));
+            GET_NODES = generic(lookup.findVirtual(agent, "getNodes", MethodType.methodType(long.class)));
+            GET_PLAYER = generic(lookup.findVirtual(configuration, "getPlayer", MethodType.methodType(player)));
+
+            GET_CELL = lookup.findStatic(move, "getCell", MethodType.methodType(int.class, int.class));
+            CLEAR_TABLE = generic(lookup.findVirtual(table, "clear", MethodType.methodType(void.class)));
+
+            MethodHandle newTable = lookup.findConstructor(table, MethodType.methodType(void.class, int.class, policy));
+            int sizeLog2 = constants.getField("TT_SIZE_LOG2").getInt(null);
+            Object policyValue = constants.getField("TT_REPLACEMENT_POLICY").get(null);
+            NEW_TABLE = generic(MethodHandles.insertArguments(newTable, 0, sizeLog2, policyValue));
+
+            /*
+             * Root split searches every root move once to the same depth, so the work per search varies less with thread
+             * scheduling than under Lazy SMP, whose helpers run until stopped. Its moves can still differ from those of
+             * a sequential search
+             */
+            MethodHandle newAgent = lookup.findConstructor(agent, MethodType.methodType(void.class, moveManager, player, table, int.class, parallelMode));
+            NEW_AGENT = generic(MethodHandles.insertArguments(newAgent, 4, parallelMode.getField("ROOT_SPLIT").get(null)));
+
+            FILE_HANDLER = fileHandler.getConstructor().newInstance();
+            READ_CONFIGURATION = generic(lookup.findVirtual(fileHandler, "readConfiguration", MethodType.methodType(configuration, BufferedReader.class, int.class)));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Engine() {
+    }
+
+    /**
+     * Parses a position in the format of input.txt
+     */
+    static Object configuration(String input, int turn) throws Throwable {
+        return (Object) READ_CONFIGURATION.invokeExact(FILE_HANDLER, (Object) new BufferedReader(new StringReader(input)), turn);
+    }
+
+    /**
+     * Erases the engine types from a handle, keeping primitives and arrays as they are
+     */
+    private static MethodHandle generic(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int index = 0; index < type.parameterCount(); index++) {
+            if (!type.parameterType(index).isPrimitive() && !type.parameterType(index).isArray()) {
+                type = type.changeParameterType(index, Object.class);
+            }
+        }
+        if (!type.returnType().isPrimitive()) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+}
@@ -0,0 +1,89 @@
+package pente.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Move generation, move application and evaluation on the positions of the corpus. The benchmarks that take a move
+ * cycle through the legal moves of the position, so that no single move is favoured
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveManagerBenchmark {
+
+    @Param({"OPENING", "MIDDLEGAME", "CAPTURES"})
+    public Positions position;
+
+    private Object moveManager;
+
+    private Object player;
+
+    private int[] moves;
+
+    private int count;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Object configuration = position.configuration();
+        moveManager = (Object) Engine.NEW_MOVE_MANAGER.invokeExact(configuration);
+        player = (Object) Engine.GET_PLAYER.invokeExact(configuration);
+        moves = new int[19 * 19];
+        count = (int) Engine.GENERATE_MOVES.invokeExact(moveManager, player, moves);
+    }
+
+    private int nextMove() {
+        int move = moves[next];
+        next = next + 1 == count ? 0 : next + 1;
+        return move;
+    }
+
+    @Benchmark
+    public Object getNextMoves() throws Throwable {
+        return (Object) Engine.GET_NEXT_MOVES.invokeExact(moveManager, player);
+    }
+
+    @Benchmark
+    public int generateMoves() throws Throwable {
+        return (int) Engine.GENERATE_MOVES.invokeExact(moveManager, player, moves);
+    }
+
+    @Benchmark
+    public Object initMove() throws Throwable {
+        int cell = (int) Engine.GET_CELL.invokeExact(nextMove());
+        return (Object) Engine.INIT_MOVE.invokeExact(moveManager, player, cell / 19, cell % 19);
+    }
+
+    @Benchmark
+    public void commitRollback() throws Throwable {
+        int move = nextMove();
+        Engine.COMMIT.invokeExact(moveManager, move);
+        Engine.ROLLBACK.invokeExact(moveManager, move);
+    }
+
+    @Benchmark
+    public long evaluate() throws Throwable {
+        return (long) Engine.EVALUATE.invokeExact(moveManager);
+    }
+
+    @Benchmark
+    public boolean isWinningMove() throws Throwable {
+        return (boolean) Engine.HAVE_WE_WON.invokeExact(moveManager, nextMove());
+    }
+}
@@ -0,0 +1,98 @@
+package pente.benchmarks;
+
+/**
+ * The benchmark corpus, in the format of input.txt. The positions come from engine self-play
+ */
+public enum Positions {
+
+    /* Six moves in, a few stones around the center */
+    OPENING(4, String.join("\n",
+            "WHITE",
+            "100.0",
+            "0,0",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "......w............",
+            ".........ww........",
+            "..........b........",
+            "..........b........",
+            "..........b........",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "...................")),
+
+    /* Thirty moves in, several threes and open lines on both sides */
+    MIDDLEGAME(16, String.join("\n",
+            "WHITE",
+            "100.0",
+            "0,0",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "....b.....b........",
+            ".....w...w.........",
+            "......w.w..........",
+            ".......w...........",
+            "......w.b..........",
+            ".....b..bwwwb......",
+            "..........b........",
+            ".........wbbbbw....",
+            "..........b.w......",
+            "..........bw.......",
+            "..........w........",
+            ".........w.b.......",
+            "........b..........",
+            "...................",
+            "...................")),
+
+    /* Forty moves in, with captures made and many pairs open to capture */
+    CAPTURES(21, String.join("\n",
+            "WHITE",
+            "100.0",
+            "4,6",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "....b...b.b........",
+            ".....w...w.........",
+            "......wwwbw........",
+            ".......w.b.........",
+            "......w.b..........",
+            "....wbbbbwwwb......",
+            "..........b........",
+            ".........wbbbbw....",
+            "..........b.w......",
+            "..........bw.......",
+            "..........w........",
+            ".........w.b.......",
+            "........b..........",
+            "...................",
+            "..................."));
+
+    private final int turn;
+
+    private final String input;
+
+    Positions(int turn, String input) {
+        this.turn = turn;
+        this.input = input;
+    }
+
+    /**
+     * Returns a fresh configuration of the position
+     */
+    Object configuration() throws Throwable {
+        return Engine.configuration(input, turn);
+    }
+}
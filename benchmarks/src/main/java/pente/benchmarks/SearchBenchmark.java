@@ -0,0 +1,74 @@
+package pente.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The full search of PenteAgent.getBestMove to a fixed depth, single-threaded and from an empty transposition table on
+ * every call. The agent is built once per trial, as a search rolls back every move it makes and leaves the position as
+ * it found it; only its move ordering history carries over between calls, as it does between moves of a game. Besides
+ * searches per second, reports the nodes per second as the secondary result "nodes"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    @Param({"OPENING", "MIDDLEGAME", "CAPTURES"})
+    public Positions position;
+
+    @Param({"1", "2", "3"})
+    public int depth;
+
+    private Object moveManager;
+
+    private Object player;
+
+    private Object table;
+
+    private Object agent;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Nodes {
+
+        public long nodes;
+    }
+
+    @Setup
+    public void setUp() throws Throwable {
+        Object configuration = position.configuration();
+        moveManager = (Object) Engine.NEW_MOVE_MANAGER.invokeExact(configuration);
+        player = (Object) Engine.GET_PLAYER.invokeExact(configuration);
+        table = (Object) Engine.NEW_TABLE.invokeExact();
+        agent = (Object) Engine.NEW_AGENT.invokeExact(moveManager, player, table, 1);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpSearch() throws Throwable {
+        Engine.CLEAR_TABLE.invokeExact(table);
+    }
+
+    @Benchmark
+    public Object getBestMove(Nodes counters) throws Throwable {
+        Object move = (Object) Engine.GET_BEST_MOVE.invokeExact(agent, Long.MAX_VALUE, depth);
+        counters.nodes += (long) Engine.GET_NODES.invokeExact(agent);
+        return move;
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+public class AllocationTest {
+
+    /* A middlegame position with threes and open lines on both sides, in the format of input.txt */
+    private static final String POSITION = String.join("\n",
+            "WHITE",
+            "100.0",
+            "0,0",
+            "...................",
+            "...................",
+            "...................",
+            "...................",
+            "....b.....b........",
+            ".....w...w.........",
+            "......w.w..........",
+            ".......w...........",
+            "......w.b..........",
+            ".....b..bwwwb......",
+            "..........b........",
+            ".........wbbbbw....",
+            "..........b.w......",
+            "..........bw.......",
+            "..........w........",
+            ".........w.b.......",
+            "........b..........",
+            "...................",
+            "...................");
+
+    private static final int TURN = 16;
+
+    private static final int DEPTH = 3;
+
+    private static final int WARMUP_SEARCHES = 20;
+
+    private static final int MEASURED_SEARCHES = 5;
+
+    /* The bytes a search may allocate whatever its size, for its stats and result; a per-node allocation is far above it */
+    private static final long MAX_BYTES_PER_SEARCH = 4 * 1024;
+
+    /**
+     * Checks that the search allocates nothing per node: after warm-up, a fixed-depth search of a middlegame position
+     * must allocate no more than MAX_BYTES_PER_SEARCH on the searching thread, however many nodes it visits. The agent
+     * and its table are built once, as the search restores the position it started from. Needs a JVM that measures
+     * thread allocation, and exits with an exception if the search allocates more
+     */
+    public static void main(String[] args) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("This JVM does not measure thread allocation");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        homework.Configuration configuration = new homework.FileHandler().readConfiguration(new BufferedReader(new StringReader(POSITION)), TURN);
+        homework.MoveManager moveManager = new homework.MoveManager(configuration);
+        homework.TranspositionTable table = new homework.TranspositionTable(homework.Constants.TT_SIZE_LOG2, homework.Constants.TT_REPLACEMENT_POLICY);
+        homework.PenteAgent agent = new homework.PenteAgent(moveManager, configuration.getPlayer(), table, 1);
+
+        for (int search = 0; search < WARMUP_SEARCHES; search++) {
+            table.clear();
+            agent.getBestMove(Long.MAX_VALUE, DEPTH);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long worst = 0;
+        for (int search = 0; search < MEASURED_SEARCHES; search++) {
+            table.clear();
+            long before = threads.getThreadAllocatedBytes(thread);
+            agent.getBestMove(Long.MAX_VALUE, DEPTH);
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            System.out.printf("Search %d: %d nodes, %d bytes allocated%n", search, agent.getNodes(), allocated);
+            worst = Math.max(worst, allocated);
+        }
+        if (worst > MAX_BYTES_PER_SEARCH) {
+            throw new IllegalStateException(String.format("A search allocated %d bytes, expected at most %d", worst, MAX_BYTES_PER_SEARCH));
+        }
+        System.out.printf("At most %d bytes per search, within %d%n", worst, MAX_BYTES_PER_SEARCH);
+    }
+}
@@ -0,0 +1,195 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchAnalysis {
+
+    /* Lines of a position in the format of input.txt: the player, the time left, the captures and the board */
+    private static final int POSITION_LINES = 3 + homework.Constants.DIMS;
+
+    /* Positions parsed ahead of the writer, per worker */
+    private static final int QUEUE_DEPTH_PER_WORKER = 2;
+
+    /* Each worker searches with its own table, smaller than the default one so that many workers fit in memory */
+    private static final int TT_SIZE_LOG2 = 18;
+
+    private static final Future<String> END = CompletableFuture.completedFuture(null);
+
+    private final long searchMillis;
+
+    private final ThreadLocal<homework.TranspositionTable> tables = ThreadLocal.withInitial(
+            () -> new homework.TranspositionTable(TT_SIZE_LOG2, homework.Constants.TT_REPLACEMENT_POLICY));
+
+    private BatchAnalysis(long searchMillis) {
+        this.searchMillis = searchMillis;
+    }
+
+    /**
+     * Analyses many positions in one run, and writes one line of JSON per position, in input order, with the best
+     * move, its score, the depth reached and the nodes searched. The positions are in the format of input.txt, one or
+     * more per file, optionally separated by blank lines. A reader stage parses them, a fixed pool of workers searches
+     * them, one position per worker at a time, and the writer stage reports them as they complete in order. Arguments:
+     * a directory (all of its files, by name), a file, or - for the standard input, then optionally the search time
+     * per position in ms (default 1000), the number of workers (default one per core) and the report path (default
+     * the standard output)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Expected a directory, a file or - for the standard input");
+        }
+        long searchMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Writer report = args.length > 3
+                ? Files.newBufferedWriter(Paths.get(args[3]), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+        try (report) {
+            new BatchAnalysis(searchMillis).run(getSources(args[0]), workers, report);
+        }
+    }
+
+    private static List<Path> getSources(String argument) throws IOException {
+        if (argument.equals("-")) {
+            return List.of();
+        }
+        Path path = Paths.get(argument);
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Runs the pipeline over the sources, or over the standard input if there are none. The queue between the reader
+     * and the writer is bounded, so the reader stays only a few positions ahead of the slowest one in progress
+     */
+    private void run(List<Path> sources, int workers, Writer report) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<>(workers * QUEUE_DEPTH_PER_WORKER);
+
+        Thread reader = new Thread(() -> {
+            Future<String> last;
+            try {
+                readAll(sources, pool, pending);
+                last = END;
+            }
+            catch (IOException | RuntimeException e) {
+                last = CompletableFuture.failedFuture(e);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            try {
+                pending.put(last);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "batch-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            for (Future<String> result = pending.take(); result != END; result = pending.take()) {
+                report.write(result.get());
+                report.write('\n');
+            }
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(String.format("Batch analysis failed: %s", e.getCause().getMessage()), e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+            report.flush();
+        }
+    }
+
+    private void readAll(List<Path> sources, ExecutorService pool, BlockingQueue<Future<String>> pending)
+            throws IOException, InterruptedException {
+        if (sources.isEmpty()) {
+            read("-", new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), pool, pending);
+        }
+        for (Path source : sources) {
+            try (BufferedReader input = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+                read(source.toString(), input, pool, pending);
+            }
+        }
+    }
+
+    /**
+     * Parses the positions of one source and queues their analyses, blocking while the queue is full
+     */
+    private void read(String source, BufferedReader input, ExecutorService pool, BlockingQueue<Future<String>> pending)
+            throws IOException, InterruptedException {
+        homework.FileHandler fileHandler = new homework.FileHandler();
+        List<String> lines = new ArrayList<>();
+        int index = 0;
+        for (String line = input.readLine(); line != null; line = input.readLine()) {
+            if (line.isBlank()) {
+                continue;
+            }
+            lines.add(line);
+            if (lines.size() == POSITION_LINES) {
+                homework.Configuration parsed = fileHandler.readConfiguration(new BufferedReader(new StringReader(String.join("\n", lines))), 0);
+                homework.Configuration configuration = withTurn(parsed);
+                int position = index++;
+                pending.put(pool.submit(() -> analyse(source, position, configuration)));
+                lines.clear();
+            }
+        }
+        if (!lines.isEmpty()) {
+            throw new IllegalArgumentException(String.format("%s ends with an incomplete position of %d lines", source, lines.size()));
+        }
+    }
+
+    private String analyse(String source, int position, homework.Configuration configuration) {
+        homework.TranspositionTable table = tables.get();
+        table.clear();
+        homework.PenteAgent agent = new homework.PenteAgent(new homework.MoveManager(configuration), configuration.getPlayer(), table, 1);
+        homework.Move move = agent.getBestMove(searchMillis);
+        return String.format(Locale.ROOT,
+                "{\"source\":\"%s\",\"position\":%d,\"player\":\"%s\",\"move\":\"%s\",\"score\":%d,\"depth\":%d,\"nodes\":%d}",
+                source.replace("\\", "\\\\").replace("\"", "\\\""), position, configuration.getPlayer(),
+                move == null ? "" : move.getString(), agent.getScore(), agent.getStats().getCompletedDepth(), agent.getNodes());
+    }
+
+    /**
+     * The files hold no turn number, so count the moves the player has made: their pieces on the board and those the
+     * opponent captured. The turn is the one about to be played
+     */
+    private static homework.Configuration withTurn(homework.Configuration configuration) {
+        homework.Player player = configuration.getPlayer();
+        int moves = player == homework.Player.WHITE ? configuration.getCapturesByBlack() : configuration.getCapturesByWhite();
+        for (homework.Player[] row : configuration.getBoard()) {
+            for (homework.Player cell : row) {
+                if (cell == player) {
+                    moves++;
+                }
+            }
+        }
+        return new homework.Configuration(configuration.getBoard(), player, configuration.getTimeRemaining(),
+                configuration.getCapturesByWhite(), configuration.getCapturesByBlack(), moves + 1);
+    }
+}
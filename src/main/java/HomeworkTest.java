@@ -12,7 +12,7 @@ public class HomeworkTest {
 
         homework.MoveManager moveManager = new homework.MoveManager(configuration);
         homework.PenteAgent agent = new homework.PenteAgent(moveManager, configuration.getPlayer());
-        homework.Move move = agent.getBestMove();
+        homework.Move move = agent.getBestMove(homework.PenteAgent.getTimeSlice(configuration));
 
         moveManager.commit(move);
         fileHandler.writeMove(move);
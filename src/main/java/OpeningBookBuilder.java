@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class OpeningBookBuilder {
+
+    private final int plies;
+
+    private final int width;
+
+    private final long searchMillis;
+
+    private final Map<Long, Integer> book = new HashMap<>();
+
+    private final Set<Long> visited = new HashSet<>();
+
+    private OpeningBookBuilder(int plies, int width, long searchMillis) {
+        this.plies = plies;
+        this.width = width;
+        this.searchMillis = searchMillis;
+    }
+
+    /**
+     * Builds the opening book offline: walks the positions of the first plies of the game from the empty board, up to
+     * width distinct replies per position (symmetric positions counted once), and stores the move of a deep search of
+     * each. Arguments, all optional: plies (default 4), width (default 8), search time per position in ms (default
+     * 10000), and the book path (default OPENING_BOOK_PATH)
+     */
+    public static void main(String[] args) throws IOException {
+        int plies = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long searchMillis = args.length > 2 ? Long.parseLong(args[2]) : 10_000;
+        String path = args.length > 3 ? args[3] : homework.Constants.OPENING_BOOK_PATH;
+
+        homework.Player[][] board = new homework.Player[homework.Constants.DIMS][homework.Constants.DIMS];
+        for (homework.Player[] row : board) {
+            Arrays.fill(row, homework.Player.NONE);
+        }
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies, width, searchMillis);
+        builder.visit(new homework.MoveManager(new homework.Configuration(board, homework.Player.WHITE, 0f, 0, 0, 1)), homework.Player.WHITE, 0);
+        homework.OpeningBook.write(path, builder.book);
+        System.out.printf("Wrote %d positions to %s%n", builder.book.size(), path);
+    }
+
+    private void visit(homework.MoveManager moveManager, homework.Player toMove, int ply) {
+        if (ply >= plies || !visited.add(homework.OpeningBook.getCanonicalHash(moveManager))) {
+            return;
+        }
+
+        /* Search the position afresh, with the side to move as the agent's side */
+        homework.MoveManager searched = new homework.MoveManager(toConfiguration(moveManager, toMove, ply));
+        homework.PenteAgent agent = new homework.PenteAgent(searched, toMove);
+        homework.Move best = agent.getBestMove(searchMillis);
+        homework.Symmetry symmetry = homework.OpeningBook.getCanonicalSymmetry(searched);
+        book.put(searched.getHash(symmetry), symmetry.transform(best.getCell()));
+        System.out.printf("ply %d: %s -> %s%n", ply, toMove, best.getString());
+
+        int[] moves = new int[homework.Constants.DIMS * homework.Constants.DIMS];
+        int count = moveManager.generateMoves(toMove, moves);
+        Set<Long> replies = new HashSet<>();
+        for (int index = 0; index < count && replies.size() < width; index++) {
+            homework.MoveManager child = new homework.MoveManager(moveManager);
+            child.commit(moves[index]);
+            if (replies.add(homework.OpeningBook.getCanonicalHash(child))) {
+                visit(child, toMove.opponent(), ply + 1);
+            }
+        }
+    }
+
+    /**
+     * White's turn number counts white's moves so far plus the one to make, black's counts white's moves so far
+     */
+    private static homework.Configuration toConfiguration(homework.MoveManager moveManager, homework.Player toMove, int ply) {
+        int turn = toMove == homework.Player.WHITE ? ply / 2 + 1 : (ply + 1) / 2;
+        homework.Player white = homework.Player.WHITE;
+        homework.Player black = homework.Player.BLACK;
+        return new homework.Configuration(moveManager.getBoard(), toMove, 0f,
+                moveManager.getCaptures(white) * 2, moveManager.getCaptures(black) * 2, turn);
+    }
+}
@@ -0,0 +1,33 @@
+import java.io.IOException;
+
+public class ScalingReport {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+
+    /**
+     * Reports the time to depth and nodes per second of the Lazy SMP search on the position in input.txt, for 1, 2, 4,
+     * 8 and 16 threads. The deepest depth to report on can be passed as the first argument
+     */
+    public static void main(String[] args) throws IOException {
+        int depthLimit = args.length > 0 ? Integer.parseInt(args[0]) : homework.Constants.MINIMAX_MAX_DEPTH + 1;
+
+        homework.FileHandler fileHandler = new homework.FileHandler();
+        homework.Configuration configuration = fileHandler.loadConfiguration();
+
+        System.out.printf("%-8s %-6s %-12s %-14s %-12s%n", "threads", "depth", "time (ms)", "nodes", "nodes/s");
+        for (int threads : THREAD_COUNTS) {
+            for (int depth = 0; depth <= depthLimit; depth++) {
+                homework.MoveManager moveManager = new homework.MoveManager(configuration);
+                homework.TranspositionTable table = new homework.TranspositionTable(homework.Constants.TT_SIZE_LOG2, homework.Constants.TT_REPLACEMENT_POLICY);
+                homework.PenteAgent agent = new homework.PenteAgent(moveManager, configuration.getPlayer(), table, threads, homework.ParallelMode.LAZY_SMP);
+
+                long start = System.nanoTime();
+                agent.getBestMove(Long.MAX_VALUE, depth);
+                long elapsed = Math.max(1, System.nanoTime() - start);
+
+                System.out.printf("%-8d %-6d %-12.1f %-14d %-12.0f%n",
+                        threads, depth, elapsed / 1e6, agent.getNodes(), agent.getNodes() * 1e9 / elapsed);
+            }
+        }
+    }
+}
@@ -0,0 +1,397 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class Tournament {
+
+    /* Plies of each opening, played at random among the first moves the move generator proposes */
+    private static final int OPENING_PLIES = 4;
+
+    private static final int OPENING_CANDIDATES = 8;
+
+    /* SPRT hypotheses, in Elo of engine A over engine B, and error rates */
+    private static final double ELO0 = 0;
+
+    private static final double ELO1 = 10;
+
+    private static final double SPRT_ALPHA = 0.05;
+
+    private static final double SPRT_BETA = 0.05;
+
+    private static final int REPORT_INTERVAL = 20;
+
+    /* Each game searches with its own tables, smaller than the default one so that many games fit in memory */
+    private static final int TT_SIZE_LOG2 = 18;
+
+    private final Engine engineA;
+
+    private final Engine engineB;
+
+    private final List<int[]> openings;
+
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    /* The agents of the games in progress, stopped along with the tournament as the searches ignore interrupts */
+    private final Set<homework.Agent> running = ConcurrentHashMap.newKeySet();
+
+    /* Where the finished games are recorded, or null */
+    private final homework.GameRecord.Writer record;
+
+    private int wins;
+
+    private int draws;
+
+    private int losses;
+
+    private Tournament(Engine engineA, Engine engineB, List<int[]> openings, homework.GameRecord.Writer record) {
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.openings = openings;
+        this.record = record;
+    }
+
+    /**
+     * Plays engine A against engine B in process, one game per core at a time, until the SPRT of ELO1 against ELO0
+     * concludes or the games run out. Each opening is played twice, with colours reversed. Arguments: the two engines
+     * as [engine:]timeMillis[/depthLimit], where the engine is minimax (the default) or mcts and the depth limit only
+     * applies to minimax (default 50/ITERATIVE_DEEPENING_MAX_DEPTH for both), then optionally the number of
+     * games (default 2000), of openings (default 500), the random seed of the openings (default 1) and the path of a
+     * game record to write the games to (default none)
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException, IOException {
+        Engine engineA = Engine.parse("A", args.length > 0 ? args[0] : "50");
+        Engine engineB = Engine.parse("B", args.length > 1 ? args[1] : "50");
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int openingCount = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+        homework.GameRecord.Writer record = args.length > 5
+                ? new homework.GameRecord.Writer(args[5], homework.Constants.GAME_RECORD_CHECKPOINT_INTERVAL)
+                : null;
+
+        Tournament tournament = new Tournament(engineA, engineB, createOpenings(openingCount, new Random(seed)), record);
+        try {
+            tournament.run(games, Runtime.getRuntime().availableProcessors());
+        }
+        finally {
+            tournament.stop();
+            if (record != null) {
+                synchronized (record) {
+                    record.close();
+                }
+            }
+        }
+    }
+
+    private void run(int games, int threads) throws InterruptedException, ExecutionException {
+        System.out.printf("%s vs %s, %d games on %d threads, SPRT elo0=%.0f elo1=%.0f alpha=%.2f beta=%.2f%n",
+                engineA, engineB, games, threads, ELO0, ELO1, SPRT_ALPHA, SPRT_BETA);
+        System.out.printf("%-8s %-18s %-20s %-10s %-10s%n", "games", "W-D-L", "elo", "LLR", "games/min");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<Integer> results = new ExecutorCompletionService<>(executor);
+        for (int game = 0; game < games; game++) {
+            int[] opening = openings.get(game / 2 % openings.size());
+            boolean aIsWhite = game % 2 == 0;
+            results.submit(() -> stopped.get() ? null : playGame(opening, aIsWhite));
+        }
+
+        long start = System.nanoTime();
+        double lower = Math.log(SPRT_BETA / (1 - SPRT_ALPHA));
+        double upper = Math.log((1 - SPRT_BETA) / SPRT_ALPHA);
+        String verdict = "inconclusive";
+        for (int game = 0; game < games; game++) {
+            Integer result = results.take().get();
+            if (result == null) {
+                continue;
+            }
+            if (result > 0) {
+                wins++;
+            }
+            else if (result < 0) {
+                losses++;
+            }
+            else {
+                draws++;
+            }
+
+            double llr = getLogLikelihoodRatio();
+            boolean concluded = llr <= lower || llr >= upper;
+            int played = wins + draws + losses;
+            if (played % REPORT_INTERVAL == 0 || concluded || game == games - 1) {
+                double minutes = Math.max(1, System.nanoTime() - start) / 60e9;
+                System.out.printf("%-8d %-18s %-20s %-10.2f %-10.1f%n",
+                        played, wins + "-" + draws + "-" + losses, formatElo(), llr, played / minutes);
+            }
+            if (concluded) {
+                verdict = llr >= upper ? "H1 accepted, A is stronger" : "H0 accepted, A is not stronger";
+                break;
+            }
+        }
+        stop();
+        executor.shutdownNow();
+        System.out.printf("SPRT [%.2f, %.2f]: %s%n", lower, upper, verdict);
+    }
+
+    /**
+     * Stops the games in progress within a clock check of their searches, and keeps the queued ones from starting
+     */
+    private void stop() {
+        stopped.set(true);
+        running.forEach(homework.Agent::stop);
+    }
+
+    /**
+     * Plays one game from the opening and returns 1 if engine A won, -1 if it lost and 0 for a draw. The game is a
+     * draw if the board fills up, or if it runs past DIMS * DIMS plies
+     */
+    private int playGame(int[] opening, boolean aIsWhite) {
+        homework.MoveManager white = new homework.MoveManager(new homework.Configuration(emptyBoard(), homework.Player.WHITE, 0f, 0, 0, 1));
+        homework.MoveManager black = new homework.MoveManager(new homework.Configuration(emptyBoard(), homework.Player.BLACK, 0f, 0, 0, 0));
+        homework.Agent whiteAgent = (aIsWhite ? engineA : engineB).createAgent(white, homework.Player.WHITE);
+        homework.Agent blackAgent = (aIsWhite ? engineB : engineA).createAgent(black, homework.Player.BLACK);
+        running.add(whiteAgent);
+        running.add(blackAgent);
+        try {
+            return playGame(opening, aIsWhite, white, black, whiteAgent, blackAgent);
+        }
+        finally {
+            running.remove(whiteAgent);
+            running.remove(blackAgent);
+        }
+    }
+
+    private int playGame(int[] opening, boolean aIsWhite, homework.MoveManager white, homework.MoveManager black,
+            homework.Agent whiteAgent, homework.Agent blackAgent) {
+        int[] moves = new int[homework.Constants.DIMS * homework.Constants.DIMS];
+        homework.Player toMove = homework.Player.WHITE;
+        for (int ply = 0; ply < moves.length && !stopped.get(); ply++) {
+            int cell;
+            if (ply < opening.length) {
+                cell = opening[ply];
+            }
+            else {
+                Engine engine = (toMove == homework.Player.WHITE) == aIsWhite ? engineA : engineB;
+                homework.Move move = engine.search(toMove == homework.Player.WHITE ? whiteAgent : blackAgent);
+                if (move == null) {
+                    return record(moves, ply, homework.Player.NONE, aIsWhite);
+                }
+                cell = move.getCell();
+            }
+            moves[ply] = play(white, black, toMove, cell);
+            boolean won = toMove == homework.Player.WHITE ? white.haveWeWon(moves[ply]) : white.haveTheyWon(moves[ply]);
+            if (won) {
+                return record(moves, ply + 1, toMove, aIsWhite);
+            }
+            if (white.isGameTied()) {
+                return record(moves, ply + 1, homework.Player.NONE, aIsWhite);
+            }
+            toMove = toMove.opponent();
+        }
+        /* Past the loop the board is full, unless the tournament stopped, and then the game is not recorded */
+        return record(moves, moves.length, homework.Player.NONE, aIsWhite);
+    }
+
+    /**
+     * Plays the move on both sides' boards, and returns it as encoded on white's
+     */
+    private static int play(homework.MoveManager white, homework.MoveManager black, homework.Player player, int cell) {
+        int i = cell / homework.Constants.DIMS;
+        int j = cell % homework.Constants.DIMS;
+        int whiteMove = white.encodeMove(player, i, j);
+        white.commit(whiteMove);
+        black.commit(black.encodeMove(player, i, j));
+        return whiteMove;
+    }
+
+    /**
+     * Writes the game to the record, if there is one and the tournament is still on, and returns its result for
+     * engine A
+     */
+    private int record(int[] moves, int count, homework.Player winner, boolean aIsWhite) {
+        if (record != null) {
+            synchronized (record) {
+                if (stopped.get()) {
+                    return 0;
+                }
+                try {
+                    for (int index = 0; index < count; index++) {
+                        record.writeMove(moves[index]);
+                    }
+                    record.endGame(winner);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        if (winner == homework.Player.NONE) {
+            return 0;
+        }
+        return (winner == homework.Player.WHITE) == aIsWhite ? 1 : -1;
+    }
+
+    /**
+     * Creates the openings: OPENING_PLIES random moves each, among the first OPENING_CANDIDATES of the move
+     * generator's order, deduplicated and shuffled
+     */
+    private static List<int[]> createOpenings(int count, Random random) {
+        List<int[]> openings = new ArrayList<>();
+        int[] moves = new int[homework.Constants.DIMS * homework.Constants.DIMS];
+        for (int attempt = 0; openings.size() < count && attempt < count * 10; attempt++) {
+            homework.MoveManager moveManager = new homework.MoveManager(new homework.Configuration(emptyBoard(), homework.Player.WHITE, 0f, 0, 0, 1));
+            homework.Player toMove = homework.Player.WHITE;
+            int[] opening = new int[OPENING_PLIES];
+            for (int ply = 0; ply < OPENING_PLIES; ply++) {
+                int candidates = Math.min(OPENING_CANDIDATES, moveManager.generateMoves(toMove, moves));
+                int move = moves[random.nextInt(candidates)];
+                opening[ply] = homework.Move.getCell(move);
+                moveManager.commit(move);
+                toMove = toMove.opponent();
+            }
+            if (openings.stream().noneMatch(other -> Arrays.equals(other, opening))) {
+                openings.add(opening);
+            }
+        }
+        Collections.shuffle(openings, random);
+        return openings;
+    }
+
+    private static homework.Player[][] emptyBoard() {
+        homework.Player[][] board = new homework.Player[homework.Constants.DIMS][homework.Constants.DIMS];
+        for (homework.Player[] row : board) {
+            Arrays.fill(row, homework.Player.NONE);
+        }
+        return board;
+    }
+
+    private double getScore() {
+        return (wins + draws / 2.0) / (wins + draws + losses);
+    }
+
+    /**
+     * The variance of the score of one game, from the win, draw and loss frequencies
+     */
+    private double getVariance() {
+        int games = wins + draws + losses;
+        double score = getScore();
+        return (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) + losses * Math.pow(score, 2)) / games;
+    }
+
+    /**
+     * The log likelihood ratio of ELO1 against ELO0, under the normal approximation of the trinomial game results
+     */
+    private double getLogLikelihoodRatio() {
+        int games = wins + draws + losses;
+        double variance = getVariance();
+        if (variance == 0) {
+            return 0;
+        }
+        double score0 = toScore(ELO0);
+        double score1 = toScore(ELO1);
+        return games * (score1 - score0) * (2 * getScore() - score0 - score1) / (2 * variance);
+    }
+
+    /**
+     * The Elo difference of the score, with its 95% confidence interval
+     */
+    private String formatElo() {
+        int games = wins + draws + losses;
+        double score = getScore();
+        double margin = 1.96 * Math.sqrt(getVariance() / games);
+        double elo = toElo(score);
+        double error = (toElo(Math.min(1, score + margin)) - toElo(Math.max(0, score - margin))) / 2;
+        return String.format(Locale.ROOT, "%.1f +/- %.1f", elo, error);
+    }
+
+    private static double toScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /* Clamped so that a clean sweep reads as a large finite difference */
+    private static double toElo(double score) {
+        double clamped = Math.min(1 - 1e-3, Math.max(1e-3, score));
+        return -400 * Math.log10(1 / clamped - 1);
+    }
+
+    /**
+     * The settings an engine plays with. Every game creates its agents afresh, single threaded, with their own tables
+     * or trees
+     */
+    private static final class Engine {
+
+        private final String name;
+
+        private final homework.Engine kind;
+
+        private final long timeMillis;
+
+        private final int depthLimit;
+
+        private Engine(String name, homework.Engine kind, long timeMillis, int depthLimit) {
+            this.name = name;
+            this.kind = kind;
+            this.timeMillis = timeMillis;
+            this.depthLimit = depthLimit;
+        }
+
+        /**
+         * Parses [engine:]timeMillis[/depthLimit]
+         */
+        static Engine parse(String name, String spec) {
+            homework.Engine kind = homework.Engine.MINIMAX;
+            int colon = spec.indexOf(':');
+            if (colon >= 0) {
+                kind = homework.Engine.valueOf(spec.substring(0, colon).toUpperCase(Locale.ROOT));
+                spec = spec.substring(colon + 1);
+            }
+            String[] parts = spec.split("/");
+            if (parts.length > 2 || (parts.length > 1 && kind != homework.Engine.MINIMAX)) {
+                throw new IllegalArgumentException(
+                        String.format("Expected [engine:]timeMillis[/depthLimit], with a depth limit for minimax only, got %s", spec));
+            }
+            long timeMillis = Long.parseLong(parts[0]);
+            int depthLimit = parts.length > 1 ? Integer.parseInt(parts[1]) : homework.Constants.ITERATIVE_DEEPENING_MAX_DEPTH;
+            return new Engine(name, kind, timeMillis, depthLimit);
+        }
+
+        homework.Agent createAgent(homework.MoveManager moveManager, homework.Player player) {
+            if (kind == homework.Engine.MCTS) {
+                return new homework.MctsAgent(moveManager, player, new homework.MctsTree(), 1);
+            }
+            homework.TranspositionTable table = new homework.TranspositionTable(TT_SIZE_LOG2, homework.Constants.TT_REPLACEMENT_POLICY);
+            return new homework.PenteAgent(moveManager, player, table, 1);
+        }
+
+        /**
+         * Searches for the agent's move within the engine's limits
+         */
+        homework.Move search(homework.Agent agent) {
+            if (kind == homework.Engine.MINIMAX) {
+                return ((homework.PenteAgent) agent).getBestMove(timeMillis, depthLimit);
+            }
+            return agent.getBestMove(timeMillis);
+        }
+
+        @Override
+        public String toString() {
+            if (kind == homework.Engine.MINIMAX) {
+                return String.format("%s (%d ms/%d plies)", name, timeMillis, depthLimit);
+            }
+            return String.format("%s (%s, %d ms)", name, kind, timeMillis);
+        }
+    }
+}
@@ -1,27 +1,109 @@
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
 public class homework {
 
+    /**
+     * With no arguments, plays one move from input.txt to output.txt. Otherwise:
+     *     --daemon [socket]  serves moves from a warm engine, over the Unix-domain socket or else stdin and stdout
+     *     --client [socket]  plays one move from input.txt to output.txt through the daemon, or in-process if it is down
+     * Any of these can be preceded by --engine minimax|mcts, to play with that engine instead of Constants.ENGINE.
+     * See {@link EngineDaemon} for the protocol
+     */
     public static void main(String[] args) throws IOException {
+        Engine engine = Constants.ENGINE;
+        if (args.length > 0 && args[0].equals("--engine")) {
+            if (args.length < 2) {
+                throw new IllegalArgumentException("Expected an engine after --engine, minimax or mcts");
+            }
+            engine = Engine.valueOf(args[1].toUpperCase(Locale.ROOT));
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        String mode = args.length > 0 ? args[0] : "";
+        switch (mode) {
+            case "":
+                play(engine);
+                break;
+            case "--daemon":
+                EngineDaemon daemon = new EngineDaemon(engine);
+                daemon.warmUp();
+                if (args.length > 1) {
+                    daemon.serve(Paths.get(args[1]));
+                }
+                else {
+                    daemon.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                            new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+                }
+                break;
+            case "--client":
+                EngineDaemon.playThroughDaemon(Paths.get(args.length > 1 ? args[1] : Constants.DAEMON_SOCKET_PATH), engine);
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown mode %s, expected --daemon or --client", mode));
+        }
+    }
+
+    /**
+     * Plays one move in-process with the engine: reads input.txt, writes output.txt and updates the play data
+     */
+    public static void play(Engine engine) throws IOException {
         FileHandler fileHandler = new FileHandler();
         Configuration configuration = fileHandler.loadConfiguration();
         MoveManager moveManager = new MoveManager(configuration);
-        PenteAgent agent = new PenteAgent(moveManager, configuration.getPlayer());
-        Move move = agent.getBestMove();
-        moveManager.commit(move);
+        TranspositionTable table = SearchCache.load(Constants.SEARCH_CACHE_PATH, configuration);
+        Agent agent = Agent.create(engine, moveManager, configuration.getPlayer(), table, new MctsTree());
+        agent.setOpeningBook(OpeningBook.open(Constants.OPENING_BOOK_PATH));
+        Move move = agent.getBestMove(PenteAgent.getTimeSlice(configuration));
         fileHandler.writeMove(move);
+        fileHandler.appendSearchReport(agent.getStats().toJson(configuration, move));
+        SearchCache.save(Constants.SEARCH_CACHE_PATH, table, moveManager, configuration);
+        moveManager.commit(move);
         fileHandler.updatePlayData(configuration);
     }
 
@@ -30,7 +112,15 @@ public class homework {
         public Configuration loadConfiguration() throws IOException {
             File file = new File(Constants.INPUT_PATH);
             BufferedReader reader = new BufferedReader(new FileReader(file));
+            Configuration configuration = readConfiguration(reader, loadPlayData());
+            reader.close();
+            return configuration;
+        }
 
+        /**
+         * Reads a configuration in the format of input.txt, the turn comes from the play data
+         */
+        public Configuration readConfiguration(BufferedReader reader, int turn) throws IOException {
             String line = reader.readLine();
             Player player = Player.valueOf(line);
 
@@ -50,10 +140,6 @@ public class homework {
                 }
             }
 
-            int turn = loadPlayData();
-
-            reader.close();
-
             return new Configuration(board, player, timeRemaining, capturesByWhite, capturesByBlack, turn);
         }
 
@@ -70,6 +156,16 @@ public class homework {
             writer.close();
         }
 
+        /**
+         * Appends one line of JSON to the search report
+         */
+        public void appendSearchReport(String json) throws IOException {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(Constants.SEARCH_REPORT_PATH, true));
+            writer.write(json);
+            writer.newLine();
+            writer.close();
+        }
+
         public void writeBoard(Player[][] board) throws IOException {
             StringBuilder builder = new StringBuilder();
             for (int i = 0; i < Constants.DIMS; i++) {
@@ -84,7 +180,7 @@ public class homework {
             writer.close();
         }
 
-        private int loadPlayData() {
+        public int loadPlayData() {
             try {
                 File file = new File(Constants.PLAYDATA_PATH);
                 BufferedReader reader = new BufferedReader(new FileReader(file));
@@ -99,6 +195,223 @@ public class homework {
         }
     }
 
+    /**
+     * Keeps one warm engine for the whole game, so that moves stop paying for JVM startup and JIT warm-up. The table,
+     * or the tree of the MCTS engine, carries over from move to move while the engine plays the same side. Each request is the turn from the play
+     * data on one line, then the lines of input.txt, and each reply is one line: the move as Move.getString(), or
+     * ERROR and a message.
+     *
+     * Between requests the daemon ponders: it searches the position after its move and the opponent's most likely
+     * reply, the hash move of the table. If the opponent plays that reply, the next search starts from the pondered
+     * tree in the table. Otherwise the ponder search is stopped within a clock check and its work is simply outgrown.
+     * The MCTS engine does not ponder, its tree already keeps the subtrees of every reply
+     */
+    public static class EngineDaemon {
+
+        private final Engine engine;
+
+        private final FileHandler fileHandler = new FileHandler();
+
+        private final TranspositionTable table = new TranspositionTable(Constants.TT_SIZE_LOG2, Constants.TT_REPLACEMENT_POLICY);
+
+        private final MctsTree tree = new MctsTree();
+
+        private final OpeningBook openingBook = OpeningBook.open(Constants.OPENING_BOOK_PATH);
+
+        private Player lastPlayer = Player.NONE;
+
+        private PenteAgent ponderAgent;
+
+        private Thread ponderThread;
+
+        /* Hash of the position being pondered on */
+        private long ponderHash;
+
+        private int ponderHits;
+
+        private int ponderMisses;
+
+        public EngineDaemon(Engine engine) {
+            this.engine = Objects.requireNonNull(engine);
+        }
+
+        /**
+         * Searches a small opening for a short while, so that the first real move already runs compiled code
+         */
+        public void warmUp() {
+            Player[][] board = new Player[Constants.DIMS][Constants.DIMS];
+            for (Player[] row : board) {
+                Arrays.fill(row, Player.NONE);
+            }
+            int center = Constants.DIMS / 2;
+            board[center][center] = Player.WHITE;
+            board[center - 1][center + 1] = Player.BLACK;
+            Configuration configuration = new Configuration(board, Player.WHITE, 100f, 0, 0, 2);
+            Agent.create(engine, new MoveManager(configuration), Player.WHITE, table, tree).getBestMove(Constants.DAEMON_WARMUP_MILLIS);
+            table.clear();
+            tree.clear();
+        }
+
+        /**
+         * Serves requests from the reader until it ends
+         */
+        public void serve(BufferedReader reader, BufferedWriter writer) throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String reply;
+                try {
+                    reply = play(fileHandler.readConfiguration(reader, Integer.parseInt(line.trim()))).getString();
+                }
+                catch (RuntimeException e) {
+                    reply = "ERROR " + e.getMessage();
+                }
+                writer.write(reply);
+                writer.newLine();
+                writer.flush();
+            }
+        }
+
+        /**
+         * Serves the clients of a Unix-domain socket, one at a time, until the process is stopped
+         */
+        public void serve(Path socketPath) throws IOException {
+            Files.deleteIfExists(socketPath);
+            try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+                server.bind(UnixDomainSocketAddress.of(socketPath));
+                while (true) {
+                    try (SocketChannel client = server.accept()) {
+                        serve(new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8)),
+                                new BufferedWriter(Channels.newWriter(client, StandardCharsets.UTF_8)));
+                    }
+                    catch (IOException e) {
+                        /* A client that went away must not bring the daemon down */
+                    }
+                }
+            }
+        }
+
+        public Move play(Configuration configuration) {
+            MoveManager moveManager = new MoveManager(configuration);
+            if (stopPondering()) {
+                if (moveManager.getHash() == ponderHash) {
+                    ponderHits++;
+                }
+                else {
+                    ponderMisses++;
+                }
+            }
+            if (configuration.getPlayer() != lastPlayer) {
+                table.clear();
+                tree.clear();
+                lastPlayer = configuration.getPlayer();
+            }
+            Agent agent = Agent.create(engine, moveManager, configuration.getPlayer(), table, tree);
+            agent.setOpeningBook(openingBook);
+            Move move = agent.getBestMove(PenteAgent.getTimeSlice(configuration));
+            agent.getStats().setPonderCounts(ponderHits, ponderMisses);
+            try {
+                fileHandler.appendSearchReport(agent.getStats().toJson(configuration, move));
+            }
+            catch (IOException e) {
+                /* The report is best effort, the move matters more */
+            }
+            if (move != null && engine == Engine.MINIMAX) {
+                startPondering(moveManager, configuration.getPlayer(), move);
+            }
+            return move;
+        }
+
+        public int getPonderHits() {
+            return ponderHits;
+        }
+
+        public int getPonderMisses() {
+            return ponderMisses;
+        }
+
+        /**
+         * Starts searching the position after our move and the opponent's expected reply, if the table has one
+         */
+        private void startPondering(MoveManager moveManager, Player us, Move move) {
+            MoveManager position = new MoveManager(moveManager);
+            position.commit(move.encode());
+            if (position.haveWeWon(move.encode())) {
+                return;
+            }
+            int cell = TranspositionTable.getMove(table.probe(position.getHash()));
+            if (cell == TranspositionTable.NO_MOVE || !position.isEmpty(cell / Constants.DIMS, cell % Constants.DIMS)) {
+                return;
+            }
+            int reply = position.encodeMove(us.opponent(), cell / Constants.DIMS, cell % Constants.DIMS);
+            position.commit(reply);
+            if (position.haveTheyWon(reply)) {
+                return;
+            }
+
+            ponderHash = position.getHash();
+            ponderAgent = new PenteAgent(position, us, table);
+            PenteAgent agent = ponderAgent;
+            ponderThread = new Thread(() -> agent.getBestMove(Long.MAX_VALUE, Constants.ITERATIVE_DEEPENING_MAX_DEPTH), "ponder");
+            ponderThread.setDaemon(true);
+            ponderThread.start();
+        }
+
+        /**
+         * Stops the ponder search and waits for it, returns false if there was none
+         */
+        private boolean stopPondering() {
+            if (ponderThread == null) {
+                return false;
+            }
+            ponderAgent.stop();
+            try {
+                ponderThread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ponderAgent = null;
+            ponderThread = null;
+            return true;
+        }
+
+        /**
+         * The thin client: keeps the file contract of a plain run, but asks the daemon on the socket for the move. Plays
+         * in-process when no daemon answers
+         */
+        public static void playThroughDaemon(Path socketPath, Engine engine) throws IOException {
+            FileHandler fileHandler = new FileHandler();
+            String reply;
+            try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+                BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+                writer.write(String.valueOf(fileHandler.loadPlayData()));
+                writer.newLine();
+                for (String line : Files.readAllLines(Paths.get(Constants.INPUT_PATH), StandardCharsets.UTF_8)) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+                writer.flush();
+                channel.shutdownOutput();
+                reply = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8)).readLine();
+            }
+            catch (IOException e) {
+                reply = null;
+            }
+
+            if (reply == null || reply.startsWith("ERROR")) {
+                homework.play(engine);
+                return;
+            }
+            BufferedWriter writer = new BufferedWriter(new FileWriter(Constants.OUTPUT_PATH, false));
+            writer.write(reply);
+            writer.close();
+            fileHandler.updatePlayData(fileHandler.loadConfiguration());
+        }
+    }
+
     public static class Configuration {
 
         private final Player player;
@@ -162,562 +475,4050 @@ public class homework {
         }
     }
 
-    public static class PenteAgent {
+    /**
+     * A player of the game: searches the position of its move manager for the best move of its side
+     */
+    public interface Agent {
 
-        private final MoveManager moveManager;
+        /**
+         * Returns the best move found within the time limit, or null if there is no move left
+         */
+        Move getBestMove(long timeLimitMillis);
 
-        private final Player us;
+        /**
+         * Stops the running search and any later one, the stopped search returns the best move found so far
+         */
+        void stop();
 
-        public PenteAgent(MoveManager moveManager, Player us) {
-            this.us = us;
-            this.moveManager = moveManager;
-        }
+        /**
+         * Sets the opening book consulted before searching
+         */
+        void setOpeningBook(OpeningBook openingBook);
 
-        public Move getBestMove() {
-            Move bestMove = null;
-            long bestScore = Integer.MIN_VALUE;
+        long getNodes();
 
-            List<Move> moves = moveManager.getNextMoves(us);
+        SearchStats getStats();
 
-            for (Move move : moves) {
-                moveManager.commit(move);
-                long score = minValue(move, 1, Integer.MIN_VALUE, Integer.MAX_VALUE);
-                moveManager.rollback(move);
-                if (score >= bestScore) {
-                    bestScore = score;
-                    bestMove = move;
-                }
+        /**
+         * Creates an agent of the engine: the minimax agent keeps its results in the table from move to move, the MCTS
+         * agent in the tree
+         */
+        static Agent create(Engine engine, MoveManager moveManager, Player us, TranspositionTable table, MctsTree tree) {
+            if (engine == Engine.MCTS) {
+                return new MctsAgent(moveManager, us, tree);
             }
-            return bestMove;
+            return new PenteAgent(moveManager, us, table);
         }
+    }
 
-        private long minValue(Move previousMove, int depth, long alpha, long beta) {
-            /* Assert that the previous move was made by us */
-            if (previousMove.getPlayer() != us) {
-                throw new IllegalStateException("Previous move on a minValue call must be made by us");
-            }
-            /* If this is game winning move, return the winning score */
-            if (moveManager.haveWeWon(previousMove)) {
-                return Result.WIN.getScore();
-            }
-            /* Else if the game is tied after this move, return the tieing score  */
-            else if (moveManager.isGameTied()) {
-                return Result.TIE.getScore();
-            }
-            /* Else if the recursion depth has been reached, return its eval */
-            else if (depth > Constants.MINIMAX_MAX_DEPTH) {
-                return moveManager.evaluate();
-            }
+    public static class PenteAgent implements Agent {
 
-            List<Move> moves = moveManager.getNextMoves(us.opponent());
+        private final MoveManager moveManager;
 
-            /* Call maxValue on the above moves */
-            for (Move move : moves) {
-                moveManager.commit(move);
-                beta = Math.min(beta, maxValue(move, depth + 1, alpha, beta));
-                moveManager.rollback(move);
-                if (alpha >= beta) {
-                    return beta;
-                }
-            }
-            return beta;
-        }
+        private final Player us;
 
-        private long maxValue(Move previousMove, int depth, long alpha, long beta) {
-            /* Assert that the previous move was made by the opponent */
-            if (previousMove.getPlayer() != us.opponent()) {
-                throw new IllegalStateException("Previous move on a minValue call must be made by us");
-            }
-            /* If this is game losing move, return the losing score */
-            if (moveManager.haveTheyWon(previousMove)) {
-                return Result.LOSS.getScore();
-            }
-            /* Else if the game is tied after this move, return the tieing score  */
-            else if (moveManager.isGameTied()) {
-                return Result.TIE.getScore();
-            }
-            /* Else if the recursion depth has been reached, return its eval */
-            else if (depth > Constants.MINIMAX_MAX_DEPTH) {
-                return moveManager.evaluate();
-            }
+        private final TranspositionTable table;
 
-            List<Move> moves = moveManager.getNextMoves(us);
+        private final int threads;
 
-            /* Try out the moves one by one */
-            for (Move move : moves) {
-                moveManager.commit(move);
-                alpha = Math.max(alpha, minValue(move, depth + 1, alpha, beta));
-                moveManager.rollback(move);
-                if (alpha >= beta) {
-                    return alpha;
-                }
-            }
-            return alpha;
-        }
-    }
+        private final ParallelMode parallelMode;
 
-    public static class MoveManager {
+        private final MoveOrderer orderer = new MoveOrderer();
 
-        private final Player[][] board;
+        private final SearchStats stats = new SearchStats();
 
-        private final Player us;
+        private final ThreatSearcher threatSearcher;
 
-        private int ourCaptures;
+        /* Cells the root moves are restricted to when the opponent threatens a forced win, null otherwise */
+        private long[] rootDefences;
 
-        private int theirCaptures;
+        /* The first move of a VCT win that the search has yet to confirm, searched first at the root, or Move.NONE */
+        private int threatMove = Move.NONE;
 
-        private int ourTurnNumber;
+        private OpeningBook openingBook = OpeningBook.EMPTY;
 
-        private int theirTurnNumber;
+        /* Move lists and their sort keys, one buffer per ply so that the search does not allocate */
+        private final int[][] moveBuffers = new int[Constants.MAX_PLY][Constants.DIMS * Constants.DIMS];
 
-        public MoveManager(Configuration configuration) {
-            this.board = configuration.getBoard();
-            this.us = configuration.getPlayer();
+        private final long[][] keyBuffers = new long[Constants.MAX_PLY][Constants.DIMS * Constants.DIMS];
 
-            /* Initialise turn numbers and captures */
-            if (configuration.getPlayer() == Player.WHITE) {
-                this.ourTurnNumber = configuration.getTurn();
-                this.theirTurnNumber = configuration.getTurn();
-                this.ourCaptures = configuration.getCapturesByWhite() / 2;
-                this.theirCaptures = configuration.getCapturesByBlack() / 2;
-            }
-            else if (configuration.getPlayer() == Player.BLACK) {
-                this.ourTurnNumber = configuration.getTurn();
-                this.theirTurnNumber = configuration.getTurn() + 1;
-                this.ourCaptures = configuration.getCapturesByBlack() / 2;
-                this.theirCaptures = configuration.getCapturesByWhite() / 2;
-            }
-        }
+        private final long[][] quiescenceCells = new long[Constants.MAX_PLY][BitBoard.CELL_WORDS];
 
-        public List<Move> getNextMoves(Player currentPlayer) {
-            int turnNumber = currentPlayer == us ? ourTurnNumber : theirTurnNumber;
-            if (currentPlayer == Player.WHITE && (turnNumber == 1 || turnNumber == 2)) {
-                return getConditionalMoves(currentPlayer, turnNumber);
-            }
-            return getNonConditionalMoves(currentPlayer);
-        }
+        private ForkJoinPool pool;
 
-        private List<Move> getNonConditionalMoves(Player currentPlayer) {
-            List<Move> moves = new ArrayList<>();
-            for (int i = 0; i < Constants.DIMS; i++) {
-                for (int j = 0; j < Constants.DIMS; j++) {
-                    if (board[i][j] == Player.NONE && isAdjacentToACoin(i, j)) {
-                        moves.add(initMove(currentPlayer, i, j));
-                    }
-                }
-            }
-            return moves;
-        }
+        /* Lazy SMP helpers are numbered from 1, the agent driving the search is 0 */
+        private int helperIndex;
 
-        private boolean isAdjacentToACoin(int i, int j) {
-            if (outOfBounds(i, j)) {
-                throw new IllegalArgumentException(String.format("Coordinates (%d,%d) are out of bounds", i, j));
-            }
-            for (Direction direction : Direction.values()) {
-                int nextI = direction.moveI(i, 1);
-                int nextJ = direction.moveJ(j, 1);
-                if (!outOfBounds(nextI, nextJ) && board[nextI][nextJ] != Player.NONE) {
-                    return true;
-                }
-            }
-            return false;
-        }
+        /* Raised by the driving agent to stop its Lazy SMP helpers */
+        private AtomicBoolean stopSignal;
 
-        private List<Move> getConditionalMoves(Player player, int turnNumber) {
-            List<Move> moves = new ArrayList<>();
-            if (player != Player.WHITE) {
-                throw new IllegalArgumentException("Cannot initialise conditional moves for the black player");
-            }
-            if (turnNumber != 1 && turnNumber != 2) {
-                throw new IllegalArgumentException("Conditional moves are reserved for the first and second turn of the white player");
-            }
-            if (turnNumber == 1) {
-                moves.add(initMove(player, 9, 9));
-            }
-            else {
-                moves.addAll(getMovesOnALine(player, 6, 6, 6, Direction.E));
-                moves.addAll(getMovesOnALine(player, 6, 12, 6, Direction.S));
-                moves.addAll(getMovesOnALine(player, 12, 12, 6, Direction.W));
-                moves.addAll(getMovesOnALine(player, 12, 6, 6, Direction.N));
-            }
-            return moves;
-        }
+        /* Raised from another thread to stop this agent's searches for good, see stop() */
+        private volatile boolean stopRequested;
 
-        private List<Move> getMovesOnALine(Player player, int i, int j, int N, Direction direction) {
-            List<Move> moves = new ArrayList<>();
-            while (N > 0 && !outOfBounds(i, j)) {
-                if (board[i][j] == Player.NONE) {
-                    moves.add(initMove(player, i, j));
-                }
-                i = direction.moveI(i, 1);
-                j = direction.moveJ(j, 1);
-                N--;
-            }
-            return moves;
-        }
+        /* The agent a helper searches for, whose stop() stops the helper too */
+        private PenteAgent driver;
 
-        public Move initMove(Player player, int i, int j) {
-            /* Cannot apply a move on an occupied intersection */
-            if (board[i][j] != Player.NONE) {
-                throw new IllegalArgumentException(String.format("Cannot play a move on an occupied intersection (%d,%d)", i, j));
-            }
+        private int maxDepth;
 
-            /* Count the number of captures in each direction */
-            List<homework.Direction> captureDirections = new ArrayList<>();
-            for (Direction direction : Direction.values()) {
-                if (checkPossibleCapture(board, player, i, j, direction)) {
-                    captureDirections.add(direction);
-                }
-            }
+        private long bestScore;
 
-            return new Move(player, i, j, captureDirections);
-        }
+        /* Scores of the iterations completed so far, by depth, the centres of the aspiration windows */
+        private final long[] previousScores = new long[Constants.MAX_PLY];
 
-        public long evaluate() {
-            if (ourCaptures >= Constants.WIN_CAPTURES_NEEDED) {
-                return Integer.MAX_VALUE;
-            }
-            else if (theirCaptures >= Constants.WIN_CAPTURES_NEEDED) {
-                return Integer.MIN_VALUE;
-            }
-            return getScore(us) - getScore(us.opponent());
+        private int lastScoredDepth = -1;
+
+        /* The score of the move the last search returned */
+        private long score;
+
+        private long deadline;
+
+        private long nodes;
+
+        private long nextClockCheck;
+
+        private boolean aborted;
+
+        public PenteAgent(MoveManager moveManager, Player us) {
+            this(moveManager, us, new TranspositionTable(Constants.TT_SIZE_LOG2, Constants.TT_REPLACEMENT_POLICY));
         }
 
-        public boolean haveWeWon(Move move) {
-            if (move.getPlayer() != us) {
-                throw new IllegalArgumentException("Our winning move check cannot be made on the opponent's move");
-            }
-            return isWinningMove(move, ourCaptures);
+        public PenteAgent(MoveManager moveManager, Player us, TranspositionTable table) {
+            this(moveManager, us, table, Constants.SEARCH_THREADS);
         }
 
-        public boolean haveTheyWon(Move move) {
-            if (move.getPlayer() == us) {
-                throw new IllegalArgumentException("The opponent's winning move check cannot be made on our move");
-            }
-            return isWinningMove(move, theirCaptures);
+        public PenteAgent(MoveManager moveManager, Player us, TranspositionTable table, int threads) {
+            this(moveManager, us, table, threads, Constants.PARALLEL_MODE);
         }
 
-        public void commit(Move move) {
-            tryMove(move);
-            if (move.getPlayer() == us) {
-                ourCaptures += move.getCaptureDirections().size();
-                ourTurnNumber += 1;
+        public PenteAgent(MoveManager moveManager, Player us, TranspositionTable table, int threads, ParallelMode parallelMode) {
+            if (threads < 1) {
+                throw new IllegalArgumentException(String.format("The search needs at least 1 thread, got %d", threads));
+            }
+            this.us = us;
+            this.moveManager = moveManager;
+            this.table = table;
+            this.threads = threads;
+            this.parallelMode = parallelMode;
+            this.threatSearcher = new ThreatSearcher(moveManager);
+        }
+
+        /**
+         * Stops the running search of this agent, and any later one, within a clock check. The stopped search returns
+         * the best move of its last completed iteration, or null if none completed
+         */
+        @Override
+        public void stop() {
+            stopRequested = true;
+            threatSearcher.stop();
+        }
+
+        /**
+         * Sets the opening book consulted by the timed searches before they search
+         */
+        @Override
+        public void setOpeningBook(OpeningBook openingBook) {
+            this.openingBook = Objects.requireNonNull(openingBook);
+        }
+
+        /**
+         * Searches to the fixed depth of MINIMAX_MAX_DEPTH
+         */
+        public Move getBestMove() {
+            deadline = Long.MAX_VALUE;
+            aborted = false;
+            nodes = 0;
+            nextClockCheck = Constants.NODES_PER_CLOCK_CHECK;
+            rootDefences = null;
+            threatMove = Move.NONE;
+            lastScoredDepth = -1;
+            stats.start(Long.MAX_VALUE);
+            int move = searchRoot(Constants.MINIMAX_MAX_DEPTH);
+            shutdownPool();
+            stats.finishIteration(Constants.MINIMAX_MAX_DEPTH, nodes);
+            return finish(move, SearchStats.Source.SEARCH);
+        }
+
+        /**
+         * Iterative deepening: searches at depth 0, 1, 2 and so on until the time limit runs out, and returns the best
+         * move of the last iteration that completed. The first iteration always completes
+         */
+        @Override
+        public Move getBestMove(long timeLimitMillis) {
+            return getBestMove(timeLimitMillis, Constants.ITERATIVE_DEEPENING_MAX_DEPTH);
+        }
+
+        /**
+         * Iterative deepening up to the given depth. In Lazy SMP mode, helper threads run the same iterative deepening
+         * on their own copies of the position for as long as this search runs
+         */
+        public Move getBestMove(long timeLimitMillis, int depthLimit) {
+            long start = System.nanoTime();
+            deadline = Long.MAX_VALUE;
+            aborted = false;
+            nodes = 0;
+            nextClockCheck = Constants.NODES_PER_CLOCK_CHECK;
+            lastScoredDepth = -1;
+            orderer.startSearch();
+            stats.start(timeLimitMillis);
+
+            int bookMove = openingBook.lookup(moveManager, us);
+            if (bookMove != Move.NONE) {
+                return finish(bookMove, SearchStats.Source.BOOK);
+            }
+
+            /*
+             * Look for a forced win by threats first, and for the moves that stop one of the opponent's. Only a VCF win
+             * is proven and played right away, a VCT win is searched first and left to the search to confirm
+             */
+            long threatMillis = (long) (timeLimitMillis * Constants.THREAT_SEARCH_TIME_SHARE);
+            long threatDeadline = threatMillis >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : start + threatMillis * 1_000_000;
+            int forcedWin = threatSearcher.findForcedWin(us, threatDeadline);
+            if (forcedWin != Move.NONE) {
+                return finish(forcedWin, SearchStats.Source.THREAT_SEARCH);
+            }
+            threatMove = threatSearcher.findThreatWin(us, threatDeadline);
+            rootDefences = threatSearcher.findDefences(us, threatDeadline);
+
+            List<ForkJoinTask<?>> helpers = new ArrayList<>();
+            List<PenteAgent> helperAgents = new ArrayList<>();
+            if (threads > 1 && parallelMode == ParallelMode.LAZY_SMP) {
+                stopSignal = new AtomicBoolean();
+                for (int index = 1; index < threads; index++) {
+                    PenteAgent helper = createHelper();
+                    helper.helperIndex = index;
+                    helper.stopSignal = stopSignal;
+                    helperAgents.add(helper);
+                    helpers.add(getPool().submit(() -> helper.runHelper(depthLimit)));
+                }
+            }
+
+            int bestMove = Move.NONE;
+            for (int depth = 0; depth <= Math.min(depthLimit, Constants.MAX_PLY - 2); depth++) {
+                int move = searchRoot(depth);
+                if (aborted) {
+                    break;
+                }
+                bestMove = move;
+                stats.finishIteration(depth, nodes);
+
+                /* A proven win or loss will not change with a deeper search */
+                if (bestScore == Result.WIN.getScore() || bestScore == Result.LOSS.getScore()) {
+                    break;
+                }
+                /* The next iteration takes several times longer than this one, don't start it if it cannot finish */
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                if (elapsed * 2 > timeLimitMillis) {
+                    break;
+                }
+                deadline = timeLimitMillis >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : start + timeLimitMillis * 1_000_000;
+            }
+
+            if (stopSignal != null) {
+                stopSignal.set(true);
+                helpers.forEach(ForkJoinTask::join);
+                for (PenteAgent helper : helperAgents) {
+                    nodes += helper.nodes;
+                    stats.add(helper.stats);
+                }
+                stopSignal = null;
+            }
+            shutdownPool();
+            return finish(bestMove, SearchStats.Source.SEARCH);
+        }
+
+        /**
+         * Returns the number of nodes visited by the last search, including those of its helpers
+         */
+        @Override
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the statistics of the last search, including those of its helpers
+         */
+        @Override
+        public SearchStats getStats() {
+            return stats;
+        }
+
+        /**
+         * Returns the score of the move the last search returned, from our side: a win for a forced win found by the
+         * threat search, 0 for a book move, else the score of the last completed iteration
+         */
+        public long getScore() {
+            return score;
+        }
+
+        private Move finish(int move, SearchStats.Source source) {
+            if (source == SearchStats.Source.THREAT_SEARCH) {
+                score = Result.WIN.getScore();
+            }
+            else if (source == SearchStats.Source.SEARCH && lastScoredDepth >= 0) {
+                score = previousScores[lastScoredDepth];
             }
             else {
-                theirCaptures += move.getCaptureDirections().size();
-                theirTurnNumber += 1;
+                score = 0;
             }
+            stats.finish(source, nodes);
+            return toMove(move);
         }
 
-        public void rollback(Move move) {
-            undoTryMove(move);
-            if (move.getPlayer() == us) {
-                ourCaptures -= move.getCaptureDirections().size();
-                ourTurnNumber -= 1;
+        /**
+         * Splits the time we have left evenly across the turns we still expect to play, keeping a margin for the JVM
+         * start up and the file I/O around the search
+         */
+        public static long getTimeSlice(Configuration configuration) {
+            long remainingMillis = (long) (configuration.getTimeRemaining() * 1000);
+            int turnsToGo = Math.max(Constants.MIN_TURNS_TO_GO, Constants.EXPECTED_TURNS - configuration.getTurn());
+            return Math.max(0, remainingMillis / turnsToGo - Constants.TIME_SAFETY_MARGIN_MS);
+        }
+
+        private Move toMove(int move) {
+            return move == Move.NONE ? null : Move.decode(move);
+        }
+
+        private int searchRoot(int depth) {
+            maxDepth = depth;
+            int bestMove = Move.NONE;
+            bestScore = Integer.MIN_VALUE;
+
+            /* Root moves are fully sorted up front, as every one of them is searched */
+            int[] moves = moveBuffers[0];
+            long[] keys = keyBuffers[0];
+            int count = filterRootMoves(moves, moveManager.generateMoves(us, moves));
+            orderer.score(moveManager, moves, keys, count, 0, TranspositionTable.getMove(table.probe(moveManager.getHash())));
+            for (int index = 0; index < count; index++) {
+                orderer.selectNext(moves, keys, index, count);
+            }
+            promoteThreatMove(moves, count);
+            if (helperIndex > 0 && count > 2) {
+                /* Lazy SMP helpers walk the root moves after the hash move in a different order */
+                rotate(moves, 1, count, helperIndex);
+            }
+
+            long alpha = Integer.MIN_VALUE;
+            long beta = Integer.MAX_VALUE;
+            if (threads > 1 && parallelMode == ParallelMode.ROOT_SPLIT && count > 1) {
+                bestMove = searchRootInParallel(Arrays.copyOf(moves, count));
             }
             else {
-                theirCaptures -= move.getCaptureDirections().size();
-                theirTurnNumber -= 1;
+                /*
+                 * Aspiration: expect the score of the iteration before last, as scores swing between odd and even
+                 * depths, and widen the window whenever it is wrong
+                 */
+                long delta = Constants.ASPIRATION_WINDOW;
+                if (depth >= Constants.ASPIRATION_MIN_DEPTH && lastScoredDepth == depth - 1) {
+                    alpha = Math.max(Integer.MIN_VALUE, previousScores[depth - 2] - delta);
+                    beta = Math.min(Integer.MAX_VALUE, previousScores[depth - 2] + delta);
+                }
+                while (true) {
+                    bestMove = searchRootSequentially(moves, count, alpha, beta);
+                    if (aborted) {
+                        return Move.NONE;
+                    }
+                    if (bestScore <= alpha && alpha > Integer.MIN_VALUE) {
+                        delta *= Constants.ASPIRATION_WIDENING;
+                        alpha = Math.max(Integer.MIN_VALUE, alpha - delta);
+                    }
+                    else if (bestScore >= beta && beta < Integer.MAX_VALUE) {
+                        delta *= Constants.ASPIRATION_WIDENING;
+                        beta = Math.min(Integer.MAX_VALUE, beta + delta);
+                    }
+                    else {
+                        break;
+                    }
+                    stats.aspirationResearches++;
+                }
+            }
+            if (aborted) {
+                return Move.NONE;
+            }
+            if (bestMove != Move.NONE) {
+                table.store(moveManager.getHash(), maxDepth + 1, getBound(bestScore, alpha, beta), bestScore, Move.getCell(bestMove));
+                previousScores[depth] = bestScore;
+                lastScoredDepth = depth;
+            }
+            return bestMove;
+        }
+
+        /**
+         * Principal variation search of the root moves within the (alpha, beta) window. The first move is searched with
+         * the whole window. Later moves only need to tell whether they beat the best so far: a null window at the best
+         * score answers that, and only the moves that pass are searched again for their exact score. Ties go to the
+         * earlier move, the better ordered one
+         */
+        private int searchRootSequentially(int[] moves, int count, long alpha, long beta) {
+            int bestMove = Move.NONE;
+            bestScore = Integer.MIN_VALUE;
+            for (int index = 0; index < count; index++) {
+                int move = moves[index];
+                moveManager.commit(move);
+                long score;
+                if (index == 0) {
+                    score = minValue(move, 1, alpha, beta);
+                }
+                else {
+                    long lower = Math.max(bestScore, alpha);
+                    score = minValue(move, 1, lower, lower + 1);
+                    if (score > lower && score < beta && !aborted) {
+                        stats.pvsResearches++;
+                        score = minValue(move, 1, lower, beta);
+                    }
+                }
+                moveManager.rollback(move);
+                if (aborted) {
+                    return Move.NONE;
+                }
+                if (score > bestScore || bestMove == Move.NONE) {
+                    bestScore = score;
+                    bestMove = move;
+                }
+                if (bestScore >= beta) {
+                    break;
+                }
+            }
+            return bestMove;
+        }
+
+        /**
+         * Moves the first move of the unconfirmed VCT win to the front of the root moves, ahead of the hash move. Searched
+         * first and with the whole window, its score is exact, and the later moves must beat it to be played instead
+         */
+        private void promoteThreatMove(int[] moves, int count) {
+            if (threatMove == Move.NONE) {
+                return;
+            }
+            for (int index = 1; index < count; index++) {
+                if (Move.getCell(moves[index]) == Move.getCell(threatMove)) {
+                    int move = moves[index];
+                    System.arraycopy(moves, 0, moves, 1, index);
+                    moves[0] = move;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Keeps only the root moves that defend against the opponent's forced win, if there is one
+         */
+        private int filterRootMoves(int[] moves, int count) {
+            if (rootDefences == null) {
+                return count;
+            }
+            int kept = 0;
+            for (int index = 0; index < count; index++) {
+                int cell = Move.getCell(moves[index]);
+                if ((rootDefences[cell >>> 6] & 1L << cell) != 0) {
+                    moves[kept++] = moves[index];
+                }
+            }
+            return kept;
+        }
+
+        private static void rotate(int[] moves, int from, int to, int distance) {
+            int length = to - from;
+            int[] rotated = new int[length];
+            for (int index = 0; index < length; index++) {
+                rotated[(index + distance) % length] = moves[from + index];
+            }
+            System.arraycopy(rotated, 0, moves, from, length);
+        }
+
+        /**
+         * Hands the root moves out to helper agents, one per thread, each searching its own copy of the position. The
+         * best score found so far is shared, and every root move is searched with a window starting just below it, so
+         * a move scoring at least as well as the best is scored exactly. Ties go to the earlier move by root index,
+         * whatever order the helpers finish in.
+         * The result is not guaranteed to be that of the sequential search at the same depth, and nothing checks that it
+         * is. The helpers share our table, so a score depends on the entries other threads left. The sequential search
+         * also uses aspiration windows and a principal variation window, which this one does not. Late move reductions
+         * and futility pruning make scores depend on the order of the moves searched before. The two searches agree in
+         * most positions, but they can pick different moves, usually of equal score
+         */
+        private int searchRootInParallel(int[] moves) {
+            long[] scores = new long[moves.length];
+            AtomicInteger nextMove = new AtomicInteger();
+            AtomicLong sharedBestScore = new AtomicLong(Integer.MIN_VALUE);
+
+            List<PenteAgent> helpers = new ArrayList<>();
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int index = 0; index < threads; index++) {
+                PenteAgent helper = createHelper();
+                helper.maxDepth = maxDepth;
+                helper.deadline = deadline;
+                helpers.add(helper);
+                tasks.add(getPool().submit(() -> helper.searchRootMoves(moves, scores, nextMove, sharedBestScore)));
+            }
+            tasks.forEach(ForkJoinTask::join);
+
+            for (PenteAgent helper : helpers) {
+                nodes += helper.nodes;
+                stats.add(helper.stats);
+                aborted |= helper.aborted;
+            }
+            aborted |= stopRequested;
+            if (aborted) {
+                return Move.NONE;
+            }
+
+            int bestMove = Move.NONE;
+            for (int index = 0; index < moves.length; index++) {
+                if (scores[index] > bestScore || bestMove == Move.NONE) {
+                    bestScore = scores[index];
+                    bestMove = moves[index];
+                }
+            }
+            return bestMove;
+        }
+
+        /**
+         * Runs on a helper agent: claims root moves until there are none left, and records their scores
+         */
+        private void searchRootMoves(int[] rootMoves, long[] scores, AtomicInteger nextMove, AtomicLong sharedBestScore) {
+            int index;
+            while ((index = nextMove.getAndIncrement()) < rootMoves.length) {
+                int move = rootMoves[index];
+                moveManager.commit(move);
+                long score = minValue(move, 1, sharedBestScore.get() - 1, Integer.MAX_VALUE);
+                moveManager.rollback(move);
+                if (aborted) {
+                    return;
+                }
+                scores[index] = score;
+                sharedBestScore.accumulateAndGet(score, Math::max);
+            }
+        }
+
+        /**
+         * Runs on a Lazy SMP helper: iterative deepening until the driving agent raises the stop signal. Odd helpers
+         * skip ahead by a ply so that the threads spread out over neighbouring depths. Helpers only contribute through
+         * the shared transposition table
+         */
+        private void runHelper(int depthLimit) {
+            deadline = Long.MAX_VALUE;
+            lastScoredDepth = -1;
+            nextClockCheck = Constants.NODES_PER_CLOCK_CHECK;
+            for (int depth = helperIndex % 2; depth <= Math.min(depthLimit + 1, Constants.MAX_PLY - 2); depth++) {
+                searchRoot(depth);
+                if (aborted) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Creates an agent searching a copy of our position that shares our transposition table
+         */
+        private PenteAgent createHelper() {
+            PenteAgent helper = new PenteAgent(new MoveManager(moveManager), us, table, 1);
+            helper.nextClockCheck = Constants.NODES_PER_CLOCK_CHECK;
+            helper.rootDefences = rootDefences;
+            helper.threatMove = threatMove;
+            helper.driver = this;
+            return helper;
+        }
+
+        private ForkJoinPool getPool() {
+            if (pool == null) {
+                pool = new ForkJoinPool(threads);
+            }
+            return pool;
+        }
+
+        /* The pool only lives for one search, so that agents going out of use leave no threads behind */
+        private void shutdownPool() {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+
+        /**
+         * Checks the clock and the stop requests every NODES_PER_CLOCK_CHECK nodes, and flags the search as aborted once
+         * it is out of time
+         */
+        private boolean isOutOfTime() {
+            if (!aborted && nodes >= nextClockCheck) {
+                nextClockCheck = nodes + Constants.NODES_PER_CLOCK_CHECK;
+                aborted = System.nanoTime() > deadline || stopRequested || (driver != null && driver.stopRequested)
+                        || (stopSignal != null && stopSignal.get());
+            }
+            return aborted;
+        }
+
+        private long minValue(int previousMove, int depth, long alpha, long beta) {
+            /* Assert that the previous move was made by us */
+            if (Move.getPlayer(previousMove) != us) {
+                throw new IllegalStateException("Previous move on a minValue call must be made by us");
+            }
+            nodes++;
+            /* If this is game winning move, return the winning score */
+            if (moveManager.haveWeWon(previousMove)) {
+                return Result.WIN.getScore();
+            }
+            /* Else if the game is tied after this move, return the tieing score  */
+            else if (moveManager.isGameTied()) {
+                return Result.TIE.getScore();
+            }
+            /* Else if the recursion depth has been reached, settle the pending captures and fours, and return its eval */
+            else if (depth > maxDepth) {
+                return quiescence(us.opponent(), previousMove, depth, alpha, beta);
+            }
+            /* Else if the search is out of time, bail out, the score is discarded */
+            else if (isOutOfTime()) {
+                return 0;
+            }
+
+            /* Else if this position has already been searched deep enough, reuse its score */
+            long hash = moveManager.getHash();
+            int remaining = maxDepth - depth + 1;
+            long entry = table.probe(hash);
+            if (entry != TranspositionTable.MISS && isUsable(entry, remaining, alpha, beta)) {
+                stats.tableCutoffs++;
+                return TranspositionTable.getScore(entry);
+            }
+
+            int[] moves = moveBuffers[depth];
+            long[] keys = keyBuffers[depth];
+            int count = generateMoves(us.opponent(), moves);
+            orderer.score(moveManager, moves, keys, count, depth, TranspositionTable.getMove(entry));
+
+            /* Unless a threat is pending, late quiet moves are reduced, and skipped next to the leaves if hopeless */
+            boolean tactical = isTactical();
+            boolean reducible = !tactical && remaining >= Constants.LMR_MIN_REMAINING;
+            boolean futile = !tactical && remaining == 1 && moveManager.evaluate() - Constants.FUTILITY_MARGIN >= beta;
+
+            /* Call maxValue on the above moves */
+            long originalAlpha = alpha;
+            long originalBeta = beta;
+            int bestMove = TranspositionTable.NO_MOVE;
+            for (int index = 0; index < count; index++) {
+                int move = orderer.selectNext(moves, keys, index, count);
+                boolean quiet = index > 0 && (reducible || futile) && isQuiet(move);
+                if (futile && quiet) {
+                    stats.futilityPrunes++;
+                    continue;
+                }
+                moveManager.commit(move);
+                long score;
+                if (index == 0 || depth >= maxDepth) {
+                    score = maxValue(move, depth + 1, alpha, beta);
+                }
+                else {
+                    /* A null window proves the move no better for the opponent, a ply shallower for a late quiet move */
+                    boolean reduced = reducible && quiet && index >= Constants.LMR_MIN_MOVE_INDEX;
+                    score = maxValue(move, depth + (reduced ? 2 : 1), beta - 1, beta);
+                    if (reduced && score < beta && !aborted) {
+                        stats.lmrResearches++;
+                        score = maxValue(move, depth + 1, beta - 1, beta);
+                    }
+                    if (reduced) {
+                        stats.lateMoveReductions++;
+                    }
+                    if (score < beta && score > alpha && !aborted) {
+                        stats.pvsResearches++;
+                        score = maxValue(move, depth + 1, alpha, beta);
+                    }
+                }
+                moveManager.rollback(move);
+                if (aborted) {
+                    return 0;
+                }
+                if (score < beta) {
+                    beta = score;
+                    bestMove = Move.getCell(move);
+                }
+                if (alpha >= beta) {
+                    orderer.recordCutoff(move, depth, remaining);
+                    stats.recordCutoff(index);
+                    break;
+                }
+            }
+            table.store(hash, remaining, getBound(beta, originalAlpha, originalBeta), beta, bestMove);
+            return beta;
+        }
+
+        private long maxValue(int previousMove, int depth, long alpha, long beta) {
+            /* Assert that the previous move was made by the opponent */
+            if (Move.getPlayer(previousMove) != us.opponent()) {
+                throw new IllegalStateException("Previous move on a minValue call must be made by us");
+            }
+            nodes++;
+            /* If this is game losing move, return the losing score */
+            if (moveManager.haveTheyWon(previousMove)) {
+                return Result.LOSS.getScore();
+            }
+            /* Else if the game is tied after this move, return the tieing score  */
+            else if (moveManager.isGameTied()) {
+                return Result.TIE.getScore();
+            }
+            /* Else if the recursion depth has been reached, settle the pending captures and fours, and return its eval */
+            else if (depth > maxDepth) {
+                return quiescence(us, previousMove, depth, alpha, beta);
+            }
+            /* Else if the search is out of time, bail out, the score is discarded */
+            else if (isOutOfTime()) {
+                return 0;
+            }
+
+            /* Else if this position has already been searched deep enough, reuse its score */
+            long hash = moveManager.getHash();
+            int remaining = maxDepth - depth + 1;
+            long entry = table.probe(hash);
+            if (entry != TranspositionTable.MISS && isUsable(entry, remaining, alpha, beta)) {
+                stats.tableCutoffs++;
+                return TranspositionTable.getScore(entry);
+            }
+
+            int[] moves = moveBuffers[depth];
+            long[] keys = keyBuffers[depth];
+            int count = generateMoves(us, moves);
+            orderer.score(moveManager, moves, keys, count, depth, TranspositionTable.getMove(entry));
+
+            /* Unless a threat is pending, late quiet moves are reduced, and skipped next to the leaves if hopeless */
+            boolean tactical = isTactical();
+            boolean reducible = !tactical && remaining >= Constants.LMR_MIN_REMAINING;
+            boolean futile = !tactical && remaining == 1 && moveManager.evaluate() + Constants.FUTILITY_MARGIN <= alpha;
+
+            /* Try out the moves one by one */
+            long originalAlpha = alpha;
+            long originalBeta = beta;
+            int bestMove = TranspositionTable.NO_MOVE;
+            for (int index = 0; index < count; index++) {
+                int move = orderer.selectNext(moves, keys, index, count);
+                boolean quiet = index > 0 && (reducible || futile) && isQuiet(move);
+                if (futile && quiet) {
+                    stats.futilityPrunes++;
+                    continue;
+                }
+                moveManager.commit(move);
+                long score;
+                if (index == 0 || depth >= maxDepth) {
+                    score = minValue(move, depth + 1, alpha, beta);
+                }
+                else {
+                    /* A null window proves the move no better for us, a ply shallower for a late quiet move */
+                    boolean reduced = reducible && quiet && index >= Constants.LMR_MIN_MOVE_INDEX;
+                    score = minValue(move, depth + (reduced ? 2 : 1), alpha, alpha + 1);
+                    if (reduced && score > alpha && !aborted) {
+                        stats.lmrResearches++;
+                        score = minValue(move, depth + 1, alpha, alpha + 1);
+                    }
+                    if (reduced) {
+                        stats.lateMoveReductions++;
+                    }
+                    if (score > alpha && score < beta && !aborted) {
+                        stats.pvsResearches++;
+                        score = minValue(move, depth + 1, alpha, beta);
+                    }
+                }
+                moveManager.rollback(move);
+                if (aborted) {
+                    return 0;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    bestMove = Move.getCell(move);
+                }
+                if (alpha >= beta) {
+                    orderer.recordCutoff(move, depth, remaining);
+                    stats.recordCutoff(index);
+                    break;
+                }
+            }
+            table.store(hash, remaining, getBound(alpha, originalAlpha, originalBeta), alpha, bestMove);
+            return alpha;
+        }
+
+        /**
+         * Whether either player has a four to complete or a winning capture to make anywhere on the board. A quiet move
+         * may then be the only answer, so no move is reduced or pruned. A capture that breaks a four needs no check of
+         * its own, as the four already makes the node tactical. Both are tracked by the move manager, so this is cheap
+         */
+        private boolean isTactical() {
+            return moveManager.hasFour(Player.WHITE) || moveManager.hasFour(Player.BLACK)
+                    || moveManager.hasWinningCapture(Player.WHITE) || moveManager.hasWinningCapture(Player.BLACK);
+        }
+
+        /**
+         * A quiet move captures nothing and makes no run longer than 2
+         */
+        private boolean isQuiet(int move) {
+            return Move.getCaptureCount(move) == 0 && moveManager.getLongestRun(Move.getPlayer(move), Move.getCell(move)) < 3;
+        }
+
+        /**
+         * Quiescence search: rather than trusting the evaluation of a position in the middle of a fight, plays on the
+         * forcing moves about the previous move until none are left, QUIESCENCE_MAX_PLY at most. The player to move wins
+         * right away if they have a four or a winning capture anywhere on the board. If instead the opponent has one, the
+         * player must block it or capture, and cannot stand pat. Otherwise the player may stand pat on the evaluation, or
+         * play a capture or a four on the lines through the previous move. The move manager tracks the fours and winning
+         * captures, so a quiet leaf stays nearly as cheap as an evaluation
+         */
+        private long quiescence(Player toMove, int previousMove, int depth, long alpha, long beta) {
+            boolean maximizing = toMove == us;
+            int cell = Move.getCell(previousMove);
+            int i = cell / Constants.DIMS;
+            int j = cell % Constants.DIMS;
+
+            /* The player to move wins right away if they can, wherever on the board */
+            if (moveManager.hasFour(toMove) || moveManager.hasWinningCapture(toMove)) {
+                return maximizing ? Result.WIN.getScore() : Result.LOSS.getScore();
+            }
+
+            /* Against a threat to win, wherever on the board, the player must answer, else they may stand pat */
+            long[] cells = quiescenceCells[Math.min(depth, Constants.MAX_PLY - 1)];
+            Arrays.fill(cells, 0);
+            boolean threatened = moveManager.hasFour(toMove.opponent()) || moveManager.hasWinningCapture(toMove.opponent());
+            boolean quiet = depth - maxDepth > Constants.QUIESCENCE_MAX_PLY || depth >= Constants.MAX_PLY - 1;
+            if (!threatened || quiet) {
+                long standPat = evaluate();
+                if (quiet) {
+                    return standPat;
+                }
+                if (maximizing) {
+                    if (standPat >= beta) {
+                        return beta;
+                    }
+                    alpha = Math.max(alpha, standPat);
+                }
+                else {
+                    if (standPat <= alpha) {
+                        return alpha;
+                    }
+                    beta = Math.min(beta, standPat);
+                }
+                moveManager.addCaptureAndFourCellsThrough(toMove, i, j, cells);
+            }
+            else {
+                /* Block on the winning cells, or capture anywhere, which may break the four */
+                moveManager.addWinningCells(toMove.opponent(), cells);
+                moveManager.addCaptureCells(toMove, cells);
+            }
+
+            for (int word = 0; word < cells.length; word++) {
+                for (long bits = cells[word]; bits != 0; bits &= bits - 1) {
+                    int target = word * 64 + Long.numberOfTrailingZeros(bits);
+                    int move = moveManager.encodeMove(toMove, target / Constants.DIMS, target % Constants.DIMS);
+                    nodes++;
+                    stats.quiescenceNodes++;
+                    long score;
+                    moveManager.commit(move);
+                    if (maximizing ? moveManager.haveWeWon(move) : moveManager.haveTheyWon(move)) {
+                        score = maximizing ? Result.WIN.getScore() : Result.LOSS.getScore();
+                    }
+                    else {
+                        score = quiescence(toMove.opponent(), move, depth + 1, alpha, beta);
+                    }
+                    moveManager.rollback(move);
+                    if (maximizing) {
+                        alpha = Math.max(alpha, score);
+                    }
+                    else {
+                        beta = Math.min(beta, score);
+                    }
+                    if (alpha >= beta) {
+                        return maximizing ? beta : alpha;
+                    }
+                }
+            }
+            return maximizing ? alpha : beta;
+        }
+
+        /**
+         * Evaluates a leaf, timing one call in STATS_SAMPLE_INTERVAL so that the clock reads cost next to nothing
+         */
+        private long evaluate() {
+            if (++stats.leafEvaluations % Constants.STATS_SAMPLE_INTERVAL != 0) {
+                return moveManager.evaluate();
+            }
+            long start = System.nanoTime();
+            long score = moveManager.evaluate();
+            stats.evaluateNanos += (System.nanoTime() - start) * Constants.STATS_SAMPLE_INTERVAL;
+            return score;
+        }
+
+        /**
+         * Generates the moves of an interior node, timed like evaluate
+         */
+        private int generateMoves(Player player, int[] moves) {
+            int count;
+            if (++stats.expandedNodes % Constants.STATS_SAMPLE_INTERVAL != 0) {
+                count = moveManager.generateMoves(player, moves);
+            }
+            else {
+                long start = System.nanoTime();
+                count = moveManager.generateMoves(player, moves);
+                stats.generateMovesNanos += (System.nanoTime() - start) * Constants.STATS_SAMPLE_INTERVAL;
+            }
+            stats.generatedMoves += count;
+            return count;
+        }
+
+        /**
+         * A stored score can stand in for a search if it was searched at least as deep, and it is either exact or a
+         * bound that already falls outside the (alpha, beta) window
+         */
+        private boolean isUsable(long entry, int remaining, long alpha, long beta) {
+            if (TranspositionTable.getDepth(entry) < remaining) {
+                return false;
+            }
+            long score = TranspositionTable.getScore(entry);
+            switch (TranspositionTable.getBound(entry)) {
+                case EXACT:
+                    return true;
+                case LOWER:
+                    return score >= beta;
+                default:
+                    return score <= alpha;
+            }
+        }
+
+        private Bound getBound(long score, long originalAlpha, long originalBeta) {
+            if (score <= originalAlpha) {
+                return Bound.UPPER;
+            }
+            if (score >= originalBeta) {
+                return Bound.LOWER;
+            }
+            return Bound.EXACT;
+        }
+    }
+
+    /**
+     * Monte Carlo tree search: PUCT selection over priors that favour captures and long runs, playouts that take
+     * wins, block them and often take captures on the lines of the previous move, and otherwise play a random move of
+     * the frontier. Playouts run on one copy of the position per thread, from the shared tree, and a thread's pending
+     * playout counts as MCTS_VIRTUAL_LOSS lost visits of every node on its path, to spread the threads over the tree
+     */
+    public static class MctsAgent implements Agent {
+
+        private final MoveManager moveManager;
+
+        private final Player us;
+
+        private final MctsTree tree;
+
+        private final int threads;
+
+        private final SearchStats stats = new SearchStats();
+
+        private OpeningBook openingBook = OpeningBook.EMPTY;
+
+        private volatile boolean stopRequested;
+
+        private final AtomicLong playouts = new AtomicLong();
+
+        private final AtomicInteger deepestPath = new AtomicInteger();
+
+        private long deadline;
+
+        public MctsAgent(MoveManager moveManager, Player us, MctsTree tree) {
+            this(moveManager, us, tree, Constants.SEARCH_THREADS);
+        }
+
+        public MctsAgent(MoveManager moveManager, Player us, MctsTree tree, int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException(String.format("The search needs at least 1 thread, got %d", threads));
+            }
+            this.moveManager = moveManager;
+            this.us = us;
+            this.tree = tree;
+            this.threads = threads;
+        }
+
+        @Override
+        public void stop() {
+            stopRequested = true;
+        }
+
+        @Override
+        public void setOpeningBook(OpeningBook openingBook) {
+            this.openingBook = Objects.requireNonNull(openingBook);
+        }
+
+        /**
+         * Runs playouts until the time limit, and returns the most visited move of the root
+         */
+        @Override
+        public Move getBestMove(long timeLimitMillis) {
+            long start = System.nanoTime();
+            playouts.set(0);
+            deepestPath.set(0);
+            stats.start(timeLimitMillis);
+
+            int bookMove = openingBook.lookup(moveManager, us);
+            if (bookMove != Move.NONE) {
+                return finish(bookMove, SearchStats.Source.BOOK);
+            }
+
+            deadline = timeLimitMillis >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : start + timeLimitMillis * 1_000_000;
+            MctsTree.Node root = tree.getRoot(moveManager.getHash());
+            List<ForkJoinTask<?>> helpers = new ArrayList<>();
+            ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads - 1) : null;
+            try {
+                for (int index = 1; index < threads; index++) {
+                    helpers.add(pool.submit(() -> runPlayouts(root)));
+                }
+                runPlayouts(root);
+                helpers.forEach(ForkJoinTask::join);
+            }
+            finally {
+                if (pool != null) {
+                    pool.shutdown();
+                }
+            }
+
+            stats.finishIteration(Math.min(deepestPath.get(), Constants.MAX_PLY - 1), playouts.get());
+            int move = root.getMostVisitedMove();
+            if (move == Move.NONE) {
+                /* The tree is full and could not expand the root, play the first move of the move generator */
+                int[] moves = new int[Constants.DIMS * Constants.DIMS];
+                move = moveManager.generateMoves(us, moves) > 0 ? moves[0] : Move.NONE;
+            }
+            return finish(move, SearchStats.Source.SEARCH);
+        }
+
+        /**
+         * Returns the number of playouts of the last search
+         */
+        @Override
+        public long getNodes() {
+            return playouts.get();
+        }
+
+        @Override
+        public SearchStats getStats() {
+            return stats;
+        }
+
+        private Move finish(int move, SearchStats.Source source) {
+            stats.finish(source, playouts.get());
+            return move == Move.NONE ? null : Move.decode(move);
+        }
+
+        /**
+         * Runs playouts until the time limit or a stop, and always at least one, so that even a search with no time
+         * left has a move to return
+         */
+        private void runPlayouts(MctsTree.Node root) {
+            MoveManager position = new MoveManager(moveManager);
+            Random random = new Random();
+            MctsTree.Node[] path = new MctsTree.Node[Constants.MAX_PLY];
+            int[] played = new int[Constants.MAX_PLY + Constants.MCTS_PLAYOUT_MAX_PLIES];
+            int[] moves = new int[Constants.DIMS * Constants.DIMS];
+            long[] cells = new long[BitBoard.CELL_WORDS];
+            do {
+                runPlayout(root, position, random, path, played, moves, cells);
+                playouts.incrementAndGet();
+            } while (!stopRequested && System.nanoTime() < deadline);
+        }
+
+        /**
+         * Walks down the tree to a node visited for the first time, or to the end of the game, plays the game out from
+         * there and backs the result up the path
+         */
+        private void runPlayout(MctsTree.Node root, MoveManager position, Random random, MctsTree.Node[] path, int[] played,
+                int[] moves, long[] cells) {
+            int length = 0;
+            int count = 0;
+            path[length++] = root;
+            MctsTree.Node node = root;
+            Player toMove = us;
+            Player winner;
+            while (true) {
+                if (node.isTerminal()) {
+                    winner = Move.getPlayer(node.getMove());
+                    break;
+                }
+                if (!node.isExpanded() && !tree.expand(node, position, toMove, moves)) {
+                    winner = simulate(position, toMove, node.getMove(), previousMove(path, length), random, played, count, moves, cells);
+                    break;
+                }
+                MctsTree.Node child = node.select();
+                if (child == null) {
+                    /* No move left, the board is full */
+                    winner = Player.NONE;
+                    break;
+                }
+                position.commit(child.getMove());
+                played[count++] = child.getMove();
+                path[length++] = child;
+                boolean firstVisit = child.visit(position.getHash(), isWin(position, child.getMove()));
+                node = child;
+                toMove = toMove.opponent();
+                if (node.isTerminal()) {
+                    winner = Move.getPlayer(node.getMove());
+                    break;
+                }
+                if (firstVisit || length == path.length) {
+                    winner = simulate(position, toMove, node.getMove(), previousMove(path, length), random, played, count, moves, cells);
+                    break;
+                }
+            }
+            deepestPath.accumulateAndGet(length - 1, Math::max);
+
+            for (int index = 1; index < length; index++) {
+                path[index - 1].update(path[index], winner);
+            }
+            for (int index = count - 1; index >= 0; index--) {
+                position.rollback(played[index]);
+            }
+        }
+
+        private static int previousMove(MctsTree.Node[] path, int length) {
+            return length >= 2 ? path[length - 2].getMove() : Move.NONE;
+        }
+
+        /**
+         * Plays the game out for up to MCTS_PLAYOUT_MAX_PLIES plies, then calls it for the side ahead on evaluation.
+         * The moves are left on the board, after the ones already in played, for the caller to roll back
+         */
+        private Player simulate(MoveManager position, Player toMove, int lastMove, int previousMove, Random random, int[] played,
+                int count, int[] moves, long[] cells) {
+            int end = count;
+            for (int ply = 0; ply < Constants.MCTS_PLAYOUT_MAX_PLIES; ply++) {
+                int move = choosePlayoutMove(position, toMove, lastMove, previousMove, random, moves, cells);
+                if (move == Move.NONE) {
+                    return Player.NONE;
+                }
+                position.commit(move);
+                played[end++] = move;
+                if (isWin(position, move)) {
+                    rollback(position, played, count, end);
+                    return toMove;
+                }
+                previousMove = lastMove;
+                lastMove = move;
+                toMove = toMove.opponent();
+            }
+            long score = position.evaluate();
+            rollback(position, played, count, end);
+            if (score == 0) {
+                return Player.NONE;
+            }
+            return score > 0 ? us : us.opponent();
+        }
+
+        private static void rollback(MoveManager position, int[] played, int from, int to) {
+            for (int index = to - 1; index >= from; index--) {
+                position.rollback(played[index]);
+            }
+        }
+
+        /**
+         * A win on the lines of the player's last two moves, else a block of the opponent's win on the lines of their
+         * last move, else a capture there at the MCTS_PLAYOUT_CAPTURE_RATE, else a random move of the frontier
+         */
+        private int choosePlayoutMove(MoveManager position, Player toMove, int lastMove, int previousMove, Random random,
+                int[] moves, long[] cells) {
+            if (lastMove != Move.NONE) {
+                int last = Move.getCell(lastMove);
+                Arrays.fill(cells, 0);
+                position.addWinningCellsThrough(toMove, last / Constants.DIMS, last % Constants.DIMS, cells);
+                if (previousMove != Move.NONE) {
+                    int previous = Move.getCell(previousMove);
+                    position.addWinningCellsThrough(toMove, previous / Constants.DIMS, previous % Constants.DIMS, cells);
+                }
+                int cell = firstCell(cells);
+                if (cell < 0) {
+                    position.addWinningCellsThrough(toMove.opponent(), last / Constants.DIMS, last % Constants.DIMS, cells);
+                    cell = firstCell(cells);
+                }
+                if (cell < 0 && random.nextDouble() < Constants.MCTS_PLAYOUT_CAPTURE_RATE) {
+                    position.addCaptureCellsThrough(toMove, last / Constants.DIMS, last % Constants.DIMS, cells);
+                    cell = firstCell(cells);
+                }
+                if (cell >= 0) {
+                    return position.encodeMove(toMove, cell / Constants.DIMS, cell % Constants.DIMS);
+                }
+            }
+            int count = position.generateMoves(toMove, moves);
+            return count == 0 ? Move.NONE : moves[random.nextInt(count)];
+        }
+
+        private static int firstCell(long[] cells) {
+            for (int word = 0; word < cells.length; word++) {
+                if (cells[word] != 0) {
+                    return word * 64 + Long.numberOfTrailingZeros(cells[word]);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Checks whether the move, already committed, won the game
+         */
+        private boolean isWin(MoveManager position, int move) {
+            return Move.getPlayer(move) == us ? position.haveWeWon(move) : position.haveTheyWon(move);
+        }
+    }
+
+    /**
+     * The tree of the MCTS agent, kept from move to move like the table of the minimax agent. A search starts from
+     * the node of its position if it lies at most 2 plies below the previous root, else from a new root. Nodes are
+     * created a whole level at a time, when a node is walked through for the second time, up to MCTS_MAX_NODES
+     */
+    public static class MctsTree {
+
+        private Node root;
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        public void clear() {
+            root = null;
+            size.set(0);
+        }
+
+        /**
+         * Returns the node of the position, reusing the subtree of the previous search if it holds the position
+         */
+        Node getRoot(long hash) {
+            Node found = root == null ? null : root.find(hash, 2);
+            if (found == null) {
+                found = new Node(Move.NONE, 1f);
+                found.visit(hash, false);
+            }
+            root = found;
+            size.set(root.count());
+            return root;
+        }
+
+        /**
+         * Creates the children of the node, one per move of the player, unless the tree is full. The node's position is
+         * on the board
+         */
+        boolean expand(Node node, MoveManager position, Player toMove, int[] moves) {
+            synchronized (node) {
+                if (node.children != null) {
+                    return true;
+                }
+                if (size.get() >= Constants.MCTS_MAX_NODES) {
+                    return false;
+                }
+                int count = position.generateMoves(toMove, moves);
+                float[] weights = new float[count];
+                float total = 0;
+                for (int index = 0; index < count; index++) {
+                    int run = position.getLongestRun(toMove, Move.getCell(moves[index]));
+                    weights[index] = 1 + Constants.MCTS_CAPTURE_PRIOR * Move.getCaptureCount(moves[index]) + run * run;
+                    total += weights[index];
+                }
+                Node[] children = new Node[count];
+                for (int index = 0; index < count; index++) {
+                    children[index] = new Node(moves[index], weights[index] / total);
+                }
+                size.addAndGet(count);
+                node.children = children;
+                return true;
+            }
+        }
+
+        /**
+         * A position of the tree. The visits and wins of a node are guarded by its parent's lock, the rest by its own
+         */
+        static final class Node {
+
+            /* The move into the node, NONE at the root */
+            private final int move;
+
+            private final float prior;
+
+            private volatile Node[] children;
+
+            private int visits;
+
+            /* Playouts that went on to a child, the visits of the node's own lock */
+            private int childVisits;
+
+            /* Wins of the player who made the move, a draw counting half */
+            private double wins;
+
+            private int virtualLosses;
+
+            private long hash;
+
+            private boolean visited;
+
+            private volatile boolean terminal;
+
+            private Node(int move, float prior) {
+                this.move = move;
+                this.prior = prior;
+            }
+
+            int getMove() {
+                return move;
+            }
+
+            boolean isExpanded() {
+                return children != null;
+            }
+
+            boolean isTerminal() {
+                return terminal;
+            }
+
+            /**
+             * Records the position on the first visit, and returns whether this was it
+             */
+            synchronized boolean visit(long hash, boolean won) {
+                if (visited) {
+                    return false;
+                }
+                this.hash = hash;
+                this.terminal = won;
+                visited = true;
+                return true;
+            }
+
+            /**
+             * Picks the child of the best PUCT value, and adds a virtual loss to it. Returns null if there is no child
+             */
+            synchronized Node select() {
+                Node best = null;
+                double bestValue = Double.NEGATIVE_INFINITY;
+                double exploration = Constants.MCTS_EXPLORATION * Math.sqrt(childVisits + 1);
+                for (Node child : children) {
+                    int pending = child.visits + Constants.MCTS_VIRTUAL_LOSS * child.virtualLosses;
+                    double value = pending == 0 ? Constants.MCTS_FIRST_PLAY_VALUE : child.wins / pending;
+                    value += exploration * child.prior / (1 + pending);
+                    if (value > bestValue) {
+                        best = child;
+                        bestValue = value;
+                    }
+                }
+                if (best != null) {
+                    best.virtualLosses++;
+                }
+                return best;
+            }
+
+            /**
+             * Counts a playout through the child, and takes its virtual loss back
+             */
+            synchronized void update(Node child, Player winner) {
+                child.virtualLosses--;
+                child.visits++;
+                if (winner == Player.NONE) {
+                    child.wins += 0.5;
+                }
+                else if (winner == Move.getPlayer(child.move)) {
+                    child.wins += 1;
+                }
+                childVisits++;
+            }
+
+            /**
+             * Returns the move of a child known to win, else of the most visited child, or NONE if there is no child
+             */
+            synchronized int getMostVisitedMove() {
+                Node best = null;
+                if (children != null) {
+                    for (Node child : children) {
+                        if (child.terminal) {
+                            return child.move;
+                        }
+                        if (best == null || child.visits > best.visits) {
+                            best = child;
+                        }
+                    }
+                }
+                return best == null ? Move.NONE : best.move;
+            }
+
+            Node find(long hash, int plies) {
+                if (visited && this.hash == hash) {
+                    return this;
+                }
+                if (plies == 0 || children == null) {
+                    return null;
+                }
+                for (Node child : children) {
+                    Node found = child.find(hash, plies - 1);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+                return null;
+            }
+
+            int count() {
+                int count = 1;
+                if (children != null) {
+                    for (Node child : children) {
+                        count += child.count();
+                    }
+                }
+                return count;
+            }
+        }
+    }
+
+    /**
+     * What a search did: plain counters bumped from minValue and maxValue, with the clock read only on a sample of the
+     * calls, and the nodes and time of every completed iteration. Each finished search is also committed as a JFR
+     * event when a recording is on
+     */
+    public static class SearchStats {
+
+        public enum Source {
+
+            /* The move came from the opening book */
+            BOOK,
+            /* The move starts a forced win found by the threat search */
+            THREAT_SEARCH,
+            /* The move came from the alpha-beta search */
+            SEARCH
+        }
+
+        private long leafEvaluations;
+
+        private long expandedNodes;
+
+        private long generatedMoves;
+
+        private long betaCutoffs;
+
+        private long firstMoveCutoffs;
+
+        private long tableCutoffs;
+
+        private long pvsResearches;
+
+        private long aspirationResearches;
+
+        private long quiescenceNodes;
+
+        private long lateMoveReductions;
+
+        private long lmrResearches;
+
+        private long futilityPrunes;
+
+        /* Set by the daemon, how often the opponent played the reply it pondered on, over its lifetime */
+        private int ponderHits;
+
+        private int ponderMisses;
+
+        private long evaluateNanos;
+
+        private long generateMovesNanos;
+
+        private final long[] iterationNodes = new long[Constants.MAX_PLY];
+
+        private final long[] iterationNanos = new long[Constants.MAX_PLY];
+
+        private int completedDepth;
+
+        private long timeLimitMillis;
+
+        private long startNanos;
+
+        private long elapsedNanos;
+
+        private long nodes;
+
+        private Source source;
+
+        private SearchEvent event;
+
+        public void start(long timeLimitMillis) {
+            leafEvaluations = 0;
+            expandedNodes = 0;
+            generatedMoves = 0;
+            betaCutoffs = 0;
+            firstMoveCutoffs = 0;
+            tableCutoffs = 0;
+            pvsResearches = 0;
+            aspirationResearches = 0;
+            quiescenceNodes = 0;
+            lateMoveReductions = 0;
+            lmrResearches = 0;
+            futilityPrunes = 0;
+            ponderHits = 0;
+            ponderMisses = 0;
+            evaluateNanos = 0;
+            generateMovesNanos = 0;
+            completedDepth = -1;
+            Arrays.fill(iterationNodes, 0);
+            Arrays.fill(iterationNanos, 0);
+            this.timeLimitMillis = timeLimitMillis;
+            startNanos = System.nanoTime();
+            event = new SearchEvent();
+            event.begin();
+        }
+
+        public void recordCutoff(int moveIndex) {
+            betaCutoffs++;
+            if (moveIndex == 0) {
+                firstMoveCutoffs++;
+            }
+        }
+
+        public void finishIteration(int depth, long nodesSoFar) {
+            iterationNodes[depth] = nodesSoFar;
+            iterationNanos[depth] = System.nanoTime() - startNanos;
+            completedDepth = depth;
+            SearchIterationEvent iteration = new SearchIterationEvent();
+            if (iteration.shouldCommit()) {
+                iteration.depth = depth;
+                iteration.nodes = nodesSoFar;
+                iteration.commit();
+            }
+        }
+
+        public void finish(Source source, long nodes) {
+            this.source = source;
+            this.nodes = nodes;
+            elapsedNanos = System.nanoTime() - startNanos;
+            if (event.shouldCommit()) {
+                event.source = source.name();
+                event.depth = completedDepth;
+                event.nodes = nodes;
+                event.leafEvaluations = leafEvaluations;
+                event.betaCutoffs = betaCutoffs;
+                event.firstMoveCutoffRate = getFirstMoveCutoffRate();
+                event.effectiveBranchingFactor = getEffectiveBranchingFactor();
+                event.commit();
+            }
+        }
+
+        /**
+         * Adds the counters of a helper's search to ours
+         */
+        public void add(SearchStats other) {
+            leafEvaluations += other.leafEvaluations;
+            expandedNodes += other.expandedNodes;
+            generatedMoves += other.generatedMoves;
+            betaCutoffs += other.betaCutoffs;
+            firstMoveCutoffs += other.firstMoveCutoffs;
+            tableCutoffs += other.tableCutoffs;
+            pvsResearches += other.pvsResearches;
+            aspirationResearches += other.aspirationResearches;
+            quiescenceNodes += other.quiescenceNodes;
+            lateMoveReductions += other.lateMoveReductions;
+            lmrResearches += other.lmrResearches;
+            futilityPrunes += other.futilityPrunes;
+            evaluateNanos += other.evaluateNanos;
+            generateMovesNanos += other.generateMovesNanos;
+        }
+
+        public void setPonderCounts(int ponderHits, int ponderMisses) {
+            this.ponderHits = ponderHits;
+            this.ponderMisses = ponderMisses;
+        }
+
+        public long getBetaCutoffs() {
+            return betaCutoffs;
+        }
+
+        /**
+         * Returns the share of cutoffs made by the first move searched, the closer to 1 the better the move ordering
+         */
+        public double getFirstMoveCutoffRate() {
+            return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+        }
+
+        /**
+         * Returns the nodes of the last completed iteration over those of the one before. The iteration counts are
+         * cumulative, so each iteration's own nodes are the difference from the one before it
+         */
+        public double getEffectiveBranchingFactor() {
+            if (completedDepth < 1) {
+                return 0;
+            }
+            long last = iterationNodes[completedDepth] - iterationNodes[completedDepth - 1];
+            long previous = iterationNodes[completedDepth - 1] - (completedDepth >= 2 ? iterationNodes[completedDepth - 2] : 0);
+            return previous <= 0 ? 0 : (double) last / previous;
+        }
+
+        public int getCompletedDepth() {
+            return completedDepth;
+        }
+
+        /**
+         * Returns the report of the search as one line of JSON
+         */
+        public String toJson(Configuration configuration, Move move) {
+            StringBuilder depths = new StringBuilder();
+            for (int depth = 0; depth <= completedDepth; depth++) {
+                if (iterationNanos[depth] == 0) {
+                    continue;
+                }
+                depths.append(depths.length() == 0 ? "" : ",")
+                        .append(String.format(Locale.ROOT, "{\"depth\":%d,\"nodes\":%d,\"ms\":%.3f}",
+                                depth, iterationNodes[depth], iterationNanos[depth] / 1e6));
+            }
+            return String.format(Locale.ROOT,
+                    "{\"turn\":%d,\"player\":\"%s\",\"move\":\"%s\",\"source\":\"%s\",\"timeLimitMs\":%d,"
+                            + "\"elapsedMs\":%.3f,\"depth\":%d,\"nodes\":%d,\"nodesPerSecond\":%.0f,"
+                            + "\"leafEvaluations\":%d,\"expandedNodes\":%d,\"averageBranching\":%.3f,"
+                            + "\"betaCutoffs\":%d,\"firstMoveCutoffRate\":%.4f,\"tableCutoffs\":%d,"
+                            + "\"pvsResearches\":%d,\"aspirationResearches\":%d,\"quiescenceNodes\":%d,"
+                            + "\"lateMoveReductions\":%d,\"lmrResearches\":%d,\"futilityPrunes\":%d,"
+                            + "\"ponderHits\":%d,\"ponderMisses\":%d,"
+                            + "\"effectiveBranchingFactor\":%.3f,\"evaluateMs\":%.3f,\"generateMovesMs\":%.3f,"
+                            + "\"iterations\":[%s]}",
+                    configuration.getTurn(), configuration.getPlayer(), move == null ? "" : move.getString(), source,
+                    timeLimitMillis == Long.MAX_VALUE ? -1 : timeLimitMillis, elapsedNanos / 1e6, completedDepth, nodes,
+                    elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos, leafEvaluations, expandedNodes,
+                    expandedNodes == 0 ? 0 : (double) generatedMoves / expandedNodes, betaCutoffs,
+                    getFirstMoveCutoffRate(), tableCutoffs, pvsResearches, aspirationResearches, quiescenceNodes,
+                    lateMoveReductions, lmrResearches, futilityPrunes, ponderHits, ponderMisses,
+                    getEffectiveBranchingFactor(), evaluateNanos / 1e6, generateMovesNanos / 1e6, depths);
+        }
+    }
+
+    @Name("pente.Search")
+    @Label("Search")
+    @Category("Pente")
+    @Description("One move's search, from the opening book lookup to the best move")
+    public static class SearchEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Completed Depth")
+        int depth;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Leaf Evaluations")
+        long leafEvaluations;
+
+        @Label("Beta Cutoffs")
+        long betaCutoffs;
+
+        @Label("First Move Cutoff Rate")
+        double firstMoveCutoffRate;
+
+        @Label("Effective Branching Factor")
+        double effectiveBranchingFactor;
+    }
+
+    @Name("pente.SearchIteration")
+    @Label("Search Iteration")
+    @Category("Pente")
+    @Description("An iteration of iterative deepening that completed")
+    public static class SearchIterationEvent extends Event {
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Nodes So Far")
+        long nodes;
+    }
+
+    /**
+     * Orders the moves of a node so that alpha-beta finds its cutoffs early: the hash move first, then captures, then
+     * moves that make or block fours and threes, then the killer moves of the ply, and the rest by their history score.
+     * Killers and history are learnt from the cutoffs of the search and belong to a single search thread
+     */
+    public static class MoveOrderer {
+
+        private static final int HASH_MOVE_SCORE = 1 << 30;
+
+        private static final int CAPTURE_SCORE = 1 << 28;
+
+        private static final int MAKE_FOUR_SCORE = 1 << 27;
+
+        private static final int BLOCK_FOUR_SCORE = 1 << 26;
+
+        private static final int MAKE_THREE_SCORE = 1 << 25;
+
+        private static final int BLOCK_THREE_SCORE = 1 << 24;
+
+        private static final int KILLER_SCORE = 1 << 23;
+
+        private static final int KILLERS_PER_PLY = 2;
+
+        /* Indexed by ply, then killer slot, holds cells */
+        private final int[][] killers = new int[Constants.MAX_PLY][KILLERS_PER_PLY];
+
+        /* Indexed by player, then cell */
+        private final int[][] history = new int[2][Constants.DIMS * Constants.DIMS];
+
+        public MoveOrderer() {
+            for (int[] plyKillers : killers) {
+                Arrays.fill(plyKillers, TranspositionTable.NO_MOVE);
+            }
+        }
+
+        /**
+         * Forgets the killers of the previous search and ages its history, so that recent cutoffs weigh more
+         */
+        public void startSearch() {
+            for (int[] plyKillers : killers) {
+                Arrays.fill(plyKillers, TranspositionTable.NO_MOVE);
+            }
+            for (int[] playerHistory : history) {
+                for (int cell = 0; cell < playerHistory.length; cell++) {
+                    playerHistory[cell] /= 2;
+                }
+            }
+        }
+
+        /**
+         * Fills in the sort keys of the moves. A key holds the ordering score in its high bits and the position of the
+         * move in its low bits, so that equally scored moves keep the order they were generated in
+         */
+        public void score(MoveManager moveManager, int[] moves, long[] keys, int count, int ply, int hashMove) {
+            for (int index = 0; index < count; index++) {
+                long score = getScore(moveManager, moves[index], ply, hashMove);
+                keys[index] = (score << 16) | (0xFFFF - index);
+            }
+        }
+
+        /**
+         * Swaps the best of the moves from index onwards into index, and returns it. Selecting lazily is cheaper than
+         * sorting up front, as most nodes cut off after their first few moves
+         */
+        public int selectNext(int[] moves, long[] keys, int index, int count) {
+            int best = index;
+            for (int other = index + 1; other < count; other++) {
+                if (keys[other] > keys[best]) {
+                    best = other;
+                }
+            }
+            if (best != index) {
+                int move = moves[best];
+                moves[best] = moves[index];
+                moves[index] = move;
+                long key = keys[best];
+                keys[best] = keys[index];
+                keys[index] = key;
+            }
+            return moves[index];
+        }
+
+        /**
+         * Remembers a move that caused a cutoff as a killer of its ply, and rewards it in the history table in
+         * proportion to the depth of the subtree it cut off
+         */
+        public void recordCutoff(int move, int ply, int remaining) {
+            int cell = Move.getCell(move);
+            if (Move.getCaptureMask(move) == 0 && killers[ply][0] != cell) {
+                killers[ply][1] = killers[ply][0];
+                killers[ply][0] = cell;
+            }
+            history[Move.getPlayer(move).ordinal()][cell] += remaining * remaining;
+        }
+
+        private int getScore(MoveManager moveManager, int move, int ply, int hashMove) {
+            int cell = Move.getCell(move);
+            if (cell == hashMove) {
+                return HASH_MOVE_SCORE;
+            }
+            if (Move.getCaptureMask(move) != 0) {
+                return CAPTURE_SCORE + Move.getCaptureCount(move);
+            }
+
+            Player player = Move.getPlayer(move);
+            int made = moveManager.getLongestRun(player, cell);
+            int blocked = moveManager.getLongestRun(player.opponent(), cell);
+            int score;
+            if (made >= 4) {
+                score = MAKE_FOUR_SCORE;
+            }
+            else if (blocked >= 4) {
+                score = BLOCK_FOUR_SCORE;
+            }
+            else if (made == 3) {
+                score = MAKE_THREE_SCORE;
+            }
+            else if (blocked == 3) {
+                score = BLOCK_THREE_SCORE;
+            }
+            else if (killers[ply][0] == cell || killers[ply][1] == cell) {
+                score = KILLER_SCORE;
+            }
+            else {
+                score = 0;
+            }
+            return score + Math.min(history[player.ordinal()][cell], KILLER_SCORE - 1);
+        }
+    }
+
+    /**
+     * Threat-space search for forced wins. Instead of every candidate move, the attacker only plays threats, and the
+     * defender only the answers to them, which keeps the branching factor to a handful of moves:
+     *     1. VCF (victory by continuous fours): the attacker keeps threatening to win on the next move, by making a
+     *        four or by threatening the capture that reaches the captures needed to win. The defender's only answers
+     *        are to block every winning cell, to capture, or to win first, so a VCF win is proven
+     *     2. VCT (victory by continuous threats): the attacker may also make open threes. The defender answers them
+     *        within the lines of the attacker's fours, by capturing, or by counter fours, which is the usual
+     *        approximation of threat-space search rather than a full proof
+     */
+    public static class ThreatSearcher {
+
+        private final MoveManager moveManager;
+
+        /* Cell sets, one per ply, for the moves tried at that ply and for scratch work */
+        private final long[][] candidates = new long[Constants.MAX_PLY][BitBoard.CELL_WORDS];
+
+        private final long[][] scratch = new long[Constants.MAX_PLY][BitBoard.CELL_WORDS];
+
+        private long nodes;
+
+        private long deadline;
+
+        private boolean aborted;
+
+        private volatile boolean stopRequested;
+
+        private int winningMove;
+
+        public ThreatSearcher(MoveManager moveManager) {
+            this.moveManager = moveManager;
+        }
+
+        /**
+         * Returns the first move of a VCF win of the attacker, or Move.NONE if there is none within the depth, node and
+         * time limits. A VCF win is proven, so the move can be played as it is
+         */
+        public int findForcedWin(Player attacker, long deadline) {
+            startBudget(deadline);
+            return search(attacker, Constants.VCF_MAX_DEPTH, false);
+        }
+
+        /**
+         * Returns the first move of a VCT win of the attacker, or Move.NONE if there is none within the limits. The
+         * defender's answers to threes are approximated, so the win is likely rather than proven, and a full search
+         * should confirm the move before it is played
+         */
+        public int findThreatWin(Player attacker, long deadline) {
+            startBudget(deadline);
+            return search(attacker, Constants.VCT_MAX_DEPTH, true);
+        }
+
+        /**
+         * If the opponent of the defender has a VCF win, as if it were their turn, returns the set of cells on which the
+         * defender's move leaves them without one. Returns null if there is no VCF win to defend against, if no move
+         * defends against it, or if the searches run out of their shared budget
+         */
+        public long[] findDefences(Player defender, long deadline) {
+            Player attacker = defender.opponent();
+            startBudget(deadline);
+            if (search(attacker, Constants.VCF_MAX_DEPTH, false) == Move.NONE) {
+                return null;
+            }
+
+            long[] defences = new long[BitBoard.CELL_WORDS];
+            boolean found = false;
+            int[] moves = new int[Constants.DIMS * Constants.DIMS];
+            int count = moveManager.generateMoves(defender, moves);
+            for (int index = 0; index < count; index++) {
+                moveManager.commit(moves[index]);
+                int win = search(attacker, Constants.VCF_MAX_DEPTH, false);
+                moveManager.rollback(moves[index]);
+                if (aborted) {
+                    return null;
+                }
+                if (win == Move.NONE) {
+                    int cell = Move.getCell(moves[index]);
+                    defences[cell >>> 6] |= 1L << cell;
+                    found = true;
+                }
+            }
+            return found ? defences : null;
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * Every public search gets THREAT_SEARCH_MAX_NODES nodes in all, however many searches it runs
+         */
+        private void startBudget(long deadline) {
+            this.deadline = deadline;
+            this.nodes = 0;
+            this.aborted = false;
+        }
+
+        private int search(Player attacker, int depth, boolean threes) {
+            winningMove = Move.NONE;
+            return attackerWins(attacker, depth, 0, threes) ? winningMove : Move.NONE;
+        }
+
+        /**
+         * Stops the running search, and any later one, within a clock check
+         */
+        public void stop() {
+            stopRequested = true;
+        }
+
+        private boolean isOutOfBudget() {
+            if (!aborted && (++nodes > Constants.THREAT_SEARCH_MAX_NODES
+                    || (nodes % Constants.NODES_PER_CLOCK_CHECK == 0 && (System.nanoTime() > deadline || stopRequested)))) {
+                aborted = true;
+            }
+            return aborted;
+        }
+
+        /**
+         * Returns true if the attacker, to move, wins by threats. Running out of budget counts as no win, so that an
+         * aborted search never claims a win it has not proven
+         */
+        private boolean attackerWins(Player attacker, int depth, int ply, boolean threes) {
+            if (isOutOfBudget() || ply >= Constants.MAX_PLY - 1) {
+                return false;
+            }
+            Player defender = attacker.opponent();
+
+            /* Win right away if we can */
+            long[] wins = scratch[ply];
+            Arrays.fill(wins, 0);
+            moveManager.addWinningCells(attacker, wins);
+            int win = firstCell(wins);
+            if (win >= 0) {
+                if (ply == 0) {
+                    winningMove = moveManager.encodeMove(attacker, win / Constants.DIMS, win % Constants.DIMS);
+                }
+                return true;
+            }
+            if (depth <= 0) {
+                return false;
+            }
+
+            /* If the defender threatens to win, our threat has to block it or capture, else make any threat */
+            long[] moves = candidates[ply];
+            Arrays.fill(moves, 0);
+            moveManager.addWinningCells(defender, moves);
+            if (firstCell(moves) < 0) {
+                moveManager.addFourCells(attacker, moves);
+                if (threes) {
+                    moveManager.addOpenThreeCells(attacker, moves);
+                }
+            }
+            moveManager.addCaptureCells(attacker, moves);
+
+            for (int word = 0; word < moves.length; word++) {
+                for (long bits = moves[word]; bits != 0; bits &= bits - 1) {
+                    int cell = word * 64 + Long.numberOfTrailingZeros(bits);
+                    int move = moveManager.encodeMove(attacker, cell / Constants.DIMS, cell % Constants.DIMS);
+                    moveManager.commit(move);
+                    boolean won = defenderLoses(attacker, depth - 1, ply + 1, threes);
+                    moveManager.rollback(move);
+                    if (won) {
+                        if (ply == 0) {
+                            winningMove = move;
+                        }
+                        return true;
+                    }
+                    if (aborted) {
+                        return false;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns true if every answer of the defender, to move, to the attacker's threat still loses. A move that
+         * threatens nothing gives the defender a free move, which refutes it
+         */
+        private boolean defenderLoses(Player attacker, int depth, int ply, boolean threes) {
+            if (isOutOfBudget() || ply >= Constants.MAX_PLY - 1) {
+                return false;
+            }
+            Player defender = attacker.opponent();
+
+            /* The defender wins first if they can */
+            long[] wins = scratch[ply];
+            Arrays.fill(wins, 0);
+            moveManager.addWinningCells(defender, wins);
+            if (firstCell(wins) >= 0) {
+                return false;
+            }
+
+            /* Against a four, the defender must take its winning cells, against an open three, the cells of its fours */
+            long[] answers = candidates[ply];
+            Arrays.fill(answers, 0);
+            moveManager.addWinningCells(attacker, answers);
+            if (firstCell(answers) < 0) {
+                if (!threes) {
+                    return false;
+                }
+                moveManager.addOpenFourCells(attacker, answers);
+                if (firstCell(answers) < 0) {
+                    return false;
+                }
+                moveManager.addFourCells(attacker, answers);
+                moveManager.addFourCells(defender, answers);
+            }
+            moveManager.addCaptureCells(defender, answers);
+
+            for (int word = 0; word < answers.length; word++) {
+                for (long bits = answers[word]; bits != 0; bits &= bits - 1) {
+                    int cell = word * 64 + Long.numberOfTrailingZeros(bits);
+                    int move = moveManager.encodeMove(defender, cell / Constants.DIMS, cell % Constants.DIMS);
+                    moveManager.commit(move);
+                    boolean won = attackerWins(attacker, depth - 1, ply + 1, threes);
+                    moveManager.rollback(move);
+                    if (!won) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static int firstCell(long[] cells) {
+            for (int word = 0; word < cells.length; word++) {
+                if (cells[word] != 0) {
+                    return word * 64 + Long.numberOfTrailingZeros(cells[word]);
+                }
+            }
+            return -1;
+        }
+    }
+
+    public static class MoveManager {
+
+        private final BitBoard board;
+
+        private final Player us;
+
+        private int ourCaptures;
+
+        private int theirCaptures;
+
+        private int ourTurnNumber;
+
+        private int theirTurnNumber;
+
+        /* Evaluation score of every line, indexed by player, then axis, then line */
+        private final int[][][] lineScores = new int[2][Axis.ALL.length][2 * Constants.DIMS - 1];
+
+        /* Sum of the line scores of each player */
+        private final int[] patternScores = new int[2];
+
+        /* Threats on every line, indexed by player, then axis, then line: FOUR_THREAT and CAPTURE_THREAT bits */
+        private final int[][][] lineThreats = new int[2][Axis.ALL.length][2 * Constants.DIMS - 1];
+
+        /* Number of lines on which each player has a cell completing five */
+        private final int[] fourLines = new int[2];
+
+        /* Number of lines on which each player has a capture to make */
+        private final int[] captureLines = new int[2];
+
+        private static final int FOUR_THREAT = 1;
+
+        private static final int CAPTURE_THREAT = 2;
+
+        /* The most pairs a single move can capture, one in each direction */
+        private static final int MAX_CAPTURES_PER_MOVE = 8;
+
+        private long hash;
+
+        private final int frontierRadius;
+
+        /* Number of pieces within the frontier radius of every cell */
+        private final int[] neighbourCounts = new int[Constants.DIMS * Constants.DIMS];
+
+        /* Bitset over the cells, set for the empty cells that have a piece within the frontier radius */
+        private final long[] frontier = new long[BitBoard.CELL_WORDS];
+
+        /* Cells within radius 1 and 2 of every cell, indexed by radius - 1, then cell */
+        private static final int[][][] NEIGHBOURS = new int[2][][];
+
+        static {
+            for (int radius = 1; radius <= 2; radius++) {
+                NEIGHBOURS[radius - 1] = new int[Constants.DIMS * Constants.DIMS][];
+                for (int i = 0; i < Constants.DIMS; i++) {
+                    for (int j = 0; j < Constants.DIMS; j++) {
+                        List<Integer> cells = new ArrayList<>();
+                        for (int ni = i - radius; ni <= i + radius; ni++) {
+                            for (int nj = j - radius; nj <= j + radius; nj++) {
+                                if ((ni != i || nj != j) && ni >= 0 && nj >= 0 && ni < Constants.DIMS && nj < Constants.DIMS) {
+                                    cells.add(ni * Constants.DIMS + nj);
+                                }
+                            }
+                        }
+                        NEIGHBOURS[radius - 1][i * Constants.DIMS + j] = cells.stream().mapToInt(Integer::intValue).toArray();
+                    }
+                }
+            }
+        }
+
+        public MoveManager(Configuration configuration) {
+            this(configuration, Constants.FRONTIER_RADIUS);
+        }
+
+        /**
+         * The frontier radius decides which empty intersections are candidate moves: those with a piece at most that many
+         * steps away in any direction. A radius of 1 is the narrowest and fastest, 2 considers more moves
+         */
+        public MoveManager(Configuration configuration, int frontierRadius) {
+            if (frontierRadius < 1 || frontierRadius > 2) {
+                throw new IllegalArgumentException(String.format("Frontier radius must be 1 or 2, got %d", frontierRadius));
+            }
+            this.board = new BitBoard(configuration.getBoard());
+            this.us = configuration.getPlayer();
+            this.frontierRadius = frontierRadius;
+            initPatternScores();
+            initThreats();
+            initFrontier();
+
+            /* Initialise turn numbers and captures */
+            if (configuration.getPlayer() == Player.WHITE) {
+                this.ourTurnNumber = configuration.getTurn();
+                this.theirTurnNumber = configuration.getTurn();
+                this.ourCaptures = configuration.getCapturesByWhite() / 2;
+                this.theirCaptures = configuration.getCapturesByBlack() / 2;
+            }
+            else if (configuration.getPlayer() == Player.BLACK) {
+                this.ourTurnNumber = configuration.getTurn();
+                this.theirTurnNumber = configuration.getTurn() + 1;
+                this.ourCaptures = configuration.getCapturesByBlack() / 2;
+                this.theirCaptures = configuration.getCapturesByWhite() / 2;
+            }
+
+            /* Initialise the hash, it is always our turn to move on a fresh configuration */
+            for (int i = 0; i < Constants.DIMS; i++) {
+                for (int j = 0; j < Constants.DIMS; j++) {
+                    if (!board.isEmpty(i, j)) {
+                        hash ^= Zobrist.piece(board.get(i, j), i, j);
+                    }
+                }
+            }
+            hashCaptures();
+            if (us == Player.BLACK) {
+                hash ^= Zobrist.sideToMove();
+            }
+        }
+
+        /**
+         * Copies the position of another move manager, so that it can be searched independently
+         */
+        public MoveManager(MoveManager other) {
+            this.board = new BitBoard(other.board);
+            this.us = other.us;
+            this.ourCaptures = other.ourCaptures;
+            this.theirCaptures = other.theirCaptures;
+            this.ourTurnNumber = other.ourTurnNumber;
+            this.theirTurnNumber = other.theirTurnNumber;
+            for (int p = 0; p < 2; p++) {
+                for (int a = 0; a < Axis.ALL.length; a++) {
+                    this.lineScores[p][a] = other.lineScores[p][a].clone();
+                    this.lineThreats[p][a] = other.lineThreats[p][a].clone();
+                }
+                this.fourLines[p] = other.fourLines[p];
+                this.captureLines[p] = other.captureLines[p];
+            }
+            this.patternScores[0] = other.patternScores[0];
+            this.patternScores[1] = other.patternScores[1];
+            this.hash = other.hash;
+            this.frontierRadius = other.frontierRadius;
+            System.arraycopy(other.neighbourCounts, 0, this.neighbourCounts, 0, this.neighbourCounts.length);
+            System.arraycopy(other.frontier, 0, this.frontier, 0, this.frontier.length);
+        }
+
+        public List<Move> getNextMoves(Player currentPlayer) {
+            int[] moves = new int[Constants.DIMS * Constants.DIMS];
+            int count = generateMoves(currentPlayer, moves);
+            List<Move> nextMoves = new ArrayList<>(count);
+            for (int index = 0; index < count; index++) {
+                nextMoves.add(Move.decode(moves[index]));
+            }
+            return nextMoves;
+        }
+
+        /**
+         * Writes the encoded moves of the player into the buffer, which must fit one move per intersection, and returns
+         * how many there are. See {@link Move#encode()} for the encoding
+         */
+        public int generateMoves(Player currentPlayer, int[] moves) {
+            int turnNumber = currentPlayer == us ? ourTurnNumber : theirTurnNumber;
+            if (currentPlayer == Player.WHITE && (turnNumber == 1 || turnNumber == 2)) {
+                return generateConditionalMoves(currentPlayer, turnNumber, moves);
+            }
+            return generateNonConditionalMoves(currentPlayer, moves);
+        }
+
+        /**
+         * Generates a move on every cell of the frontier, in raster order, so the cost is proportional to the size of the
+         * frontier rather than the board
+         */
+        private int generateNonConditionalMoves(Player currentPlayer, int[] moves) {
+            int count = 0;
+            for (int word = 0; word < frontier.length; word++) {
+                for (long bits = frontier[word]; bits != 0; bits &= bits - 1) {
+                    int cell = word * 64 + Long.numberOfTrailingZeros(bits);
+                    moves[count++] = encodeMove(currentPlayer, cell / Constants.DIMS, cell % Constants.DIMS);
+                }
+            }
+            return count;
+        }
+
+        private void initFrontier() {
+            for (int i = 0; i < Constants.DIMS; i++) {
+                for (int j = 0; j < Constants.DIMS; j++) {
+                    if (!board.isEmpty(i, j)) {
+                        for (int neighbour : NEIGHBOURS[frontierRadius - 1][i * Constants.DIMS + j]) {
+                            neighbourCounts[neighbour]++;
+                        }
+                    }
+                }
+            }
+            for (int cell = 0; cell < neighbourCounts.length; cell++) {
+                if (neighbourCounts[cell] > 0 && board.isEmpty(cell / Constants.DIMS, cell % Constants.DIMS)) {
+                    frontier[cell >>> 6] |= 1L << cell;
+                }
+            }
+        }
+
+        /**
+         * Keeps the frontier in step with a piece placed on the cell: its neighbours gain a piece nearby, and the cell
+         * itself is no longer a candidate
+         */
+        private void addToFrontier(int cell) {
+            for (int neighbour : NEIGHBOURS[frontierRadius - 1][cell]) {
+                if (neighbourCounts[neighbour]++ == 0 && board.isEmpty(neighbour / Constants.DIMS, neighbour % Constants.DIMS)) {
+                    frontier[neighbour >>> 6] |= 1L << neighbour;
+                }
+            }
+            frontier[cell >>> 6] &= ~(1L << cell);
+        }
+
+        /**
+         * Keeps the frontier in step with a piece removed from the cell, which is the reverse of addToFrontier
+         */
+        private void removeFromFrontier(int cell) {
+            for (int neighbour : NEIGHBOURS[frontierRadius - 1][cell]) {
+                if (--neighbourCounts[neighbour] == 0) {
+                    frontier[neighbour >>> 6] &= ~(1L << neighbour);
+                }
+            }
+            if (neighbourCounts[cell] > 0) {
+                frontier[cell >>> 6] |= 1L << cell;
+            }
+        }
+
+        private int generateConditionalMoves(Player player, int turnNumber, int[] moves) {
+            if (player != Player.WHITE) {
+                throw new IllegalArgumentException("Cannot initialise conditional moves for the black player");
+            }
+            if (turnNumber != 1 && turnNumber != 2) {
+                throw new IllegalArgumentException("Conditional moves are reserved for the first and second turn of the white player");
+            }
+            int count = 0;
+            if (turnNumber == 1) {
+                moves[count++] = encodeMove(player, 9, 9);
+            }
+            else {
+                count = generateMovesOnALine(player, 6, 6, 6, Direction.E, moves, count);
+                count = generateMovesOnALine(player, 6, 12, 6, Direction.S, moves, count);
+                count = generateMovesOnALine(player, 12, 12, 6, Direction.W, moves, count);
+                count = generateMovesOnALine(player, 12, 6, 6, Direction.N, moves, count);
+            }
+            return count;
+        }
+
+        private int generateMovesOnALine(Player player, int i, int j, int N, Direction direction, int[] moves, int count) {
+            while (N > 0 && !outOfBounds(i, j)) {
+                if (board.isEmpty(i, j)) {
+                    moves[count++] = encodeMove(player, i, j);
+                }
+                i = direction.moveI(i, 1);
+                j = direction.moveJ(j, 1);
+                N--;
+            }
+            return count;
+        }
+
+        public Move initMove(Player player, int i, int j) {
+            return Move.decode(encodeMove(player, i, j));
+        }
+
+        public int encodeMove(Player player, int i, int j) {
+            /* Cannot apply a move on an occupied intersection */
+            if (!board.isEmpty(i, j)) {
+                throw new IllegalArgumentException(String.format("Cannot play a move on an occupied intersection (%d,%d)", i, j));
+            }
+
+            /* Mark the directions in which the move captures */
+            int cell = i * Constants.DIMS + j;
+            int captureMask = 0;
+            for (Direction direction : Direction.ALL) {
+                if (checkPossibleCapture(player, cell, direction)) {
+                    captureMask |= 1 << direction.ordinal();
+                }
+            }
+
+            return Move.encode(player, cell, captureMask);
+        }
+
+        /**
+         * Returns the length of the longest line of the player's pieces that would pass through (i, j), if the player
+         * placed a piece on it
+         */
+        public int getLongestRun(Player player, int cell) {
+            int longest = 0;
+            for (Axis axis : Axis.ALL) {
+                int bit = axis.bitIndex(cell);
+                long line = board.getLine(player, axis, axis.lineIndex(cell)) | 1L << bit;
+                longest = Math.max(longest, BitBoard.runLength(line, bit));
+            }
+            return longest;
+        }
+
+        public long evaluate() {
+            if (ourCaptures >= Constants.WIN_CAPTURES_NEEDED) {
+                return Integer.MAX_VALUE;
+            }
+            else if (theirCaptures >= Constants.WIN_CAPTURES_NEEDED) {
+                return Integer.MIN_VALUE;
+            }
+            return getScore(us) - getScore(us.opponent());
+        }
+
+        public boolean haveWeWon(Move move) {
+            return haveWeWon(move.encode());
+        }
+
+        public boolean haveWeWon(int move) {
+            if (Move.getPlayer(move) != us) {
+                throw new IllegalArgumentException("Our winning move check cannot be made on the opponent's move");
+            }
+            return isWinningMove(move, ourCaptures);
+        }
+
+        public boolean haveTheyWon(Move move) {
+            return haveTheyWon(move.encode());
+        }
+
+        public boolean haveTheyWon(int move) {
+            if (Move.getPlayer(move) == us) {
+                throw new IllegalArgumentException("The opponent's winning move check cannot be made on our move");
+            }
+            return isWinningMove(move, theirCaptures);
+        }
+
+        public void commit(Move move) {
+            if (move.isApplied()) {
+                throw new IllegalArgumentException("Cannot commit an applied move");
+            }
+            commit(move.encode());
+            move.commit();
+        }
+
+        public void commit(int move) {
+            tryMove(move);
+            hashCaptures();
+            if (Move.getPlayer(move) == us) {
+                ourCaptures += Move.getCaptureCount(move);
+                ourTurnNumber += 1;
+            }
+            else {
+                theirCaptures += Move.getCaptureCount(move);
+                theirTurnNumber += 1;
+            }
+            hashCaptures();
+            hash ^= Zobrist.sideToMove();
+        }
+
+        public void rollback(Move move) {
+            if (!move.isApplied()) {
+                throw new IllegalArgumentException("Cannot roll back an unapplied move");
+            }
+            rollback(move.encode());
+            move.revoke();
+        }
+
+        public void rollback(int move) {
+            undoTryMove(move);
+            hashCaptures();
+            if (Move.getPlayer(move) == us) {
+                ourCaptures -= Move.getCaptureCount(move);
+                ourTurnNumber -= 1;
+            }
+            else {
+                theirCaptures -= Move.getCaptureCount(move);
+                theirTurnNumber -= 1;
+            }
+            hashCaptures();
+            hash ^= Zobrist.sideToMove();
+        }
+
+        /**
+         * Returns the Zobrist hash of the current position, covering the pieces, the captures of both players and the
+         * side to move
+         */
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * Returns the Zobrist hash of the position mirrored or rotated by the symmetry
+         */
+        public long getHash(Symmetry symmetry) {
+            long transformed = hash;
+            for (int i = 0; i < Constants.DIMS; i++) {
+                for (int j = 0; j < Constants.DIMS; j++) {
+                    if (!board.isEmpty(i, j)) {
+                        Player player = board.get(i, j);
+                        int cell = symmetry.transform(i * Constants.DIMS + j);
+                        transformed ^= Zobrist.piece(player, i, j) ^ Zobrist.piece(player, cell / Constants.DIMS, cell % Constants.DIMS);
+                    }
+                }
+            }
+            return transformed;
+        }
+
+        public boolean isEmpty(int i, int j) {
+            return board.isEmpty(i, j);
+        }
+
+        public Player getPiece(int i, int j) {
+            return board.get(i, j);
+        }
+
+        public int getCaptures(Player player) {
+            return player == us ? ourCaptures : theirCaptures;
+        }
+
+        /**
+         * Adds the cells on which the player wins right away to the cell set: those completing 5 in a row, and the
+         * captures that take the player to the captures needed to win
+         */
+        public void addWinningCells(Player player, long[] cells) {
+            for (Axis axis : Axis.ALL) {
+                for (int line = 0; line < axis.getLineCount(); line++) {
+                    long ours = board.getLine(player, axis, line);
+                    if (Long.bitCount(ours) < 4) {
+                        continue;
+                    }
+                    long empty = board.getEmptyLine(axis, line);
+                    addCells(axis, line, BitBoard.matchFive(ours, empty), cells);
+                }
+            }
+            int capturesSoFar = getCaptures(player);
+            if (capturesSoFar == 0) {
+                return;
+            }
+            for (Axis axis : Axis.ALL) {
+                for (int line = 0; line < axis.getLineCount(); line++) {
+                    for (long bits = getCaptureBits(player, axis, line); bits != 0; bits &= bits - 1) {
+                        int cell = axis.cellIndex(line, Long.numberOfTrailingZeros(bits));
+                        int move = encodeMove(player, cell / Constants.DIMS, cell % Constants.DIMS);
+                        if (capturesSoFar + Move.getCaptureCount(move) >= Constants.WIN_CAPTURES_NEEDED) {
+                            cells[cell >>> 6] |= 1L << cell;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Whether the player has a cell completing five anywhere on the board, kept up to date by commit and rollback
+         */
+        public boolean hasFour(Player player) {
+            return fourLines[player.ordinal()] > 0;
+        }
+
+        /**
+         * Whether the player has a capture anywhere on the board that takes it to the captures needed to win. Only
+         * scans the board when the captures on offer could be enough
+         */
+        public boolean hasWinningCapture(Player player) {
+            int capturesSoFar = getCaptures(player);
+            int lines = captureLines[player.ordinal()];
+            if (lines == 0 || capturesSoFar + Math.min(MAX_CAPTURES_PER_MOVE, 2 * lines) < Constants.WIN_CAPTURES_NEEDED) {
+                return false;
+            }
+            for (Axis axis : Axis.ALL) {
+                for (int line = 0; line < axis.getLineCount(); line++) {
+                    if ((lineThreats[player.ordinal()][axis.ordinal()][line] & CAPTURE_THREAT) == 0) {
+                        continue;
+                    }
+                    for (long bits = getCaptureBits(player, axis, line); bits != 0; bits &= bits - 1) {
+                        int cell = axis.cellIndex(line, Long.numberOfTrailingZeros(bits));
+                        int move = encodeMove(player, cell / Constants.DIMS, cell % Constants.DIMS);
+                        if (capturesSoFar + Move.getCaptureCount(move) >= Constants.WIN_CAPTURES_NEEDED) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds the cells on which the player would make a four to the cell set
+         */
+        public void addFourCells(Player player, long[] cells) {
+            for (Axis axis : Axis.ALL) {
+                for (int line = 0; line < axis.getLineCount(); line++) {
+                    long ours = board.getLine(player, axis, line);
+                    if (Long.bitCount(ours) < 3) {
+                        continue;
+                    }
+                    long empty = board.getEmptyLine(axis, line);
+                    addCells(axis, line, BitBoard.matchFour(ours, empty), cells);
+                }
+            }
+        }
+
+        /**
+         * Adds the cells on which the player would make an open four to the cell set
+         */
+        public void addOpenFourCells(Player player, long[] cells) {
+            for (Axis axis : Axis.ALL) {
+                for (int line = 0; line < axis.getLineCount(); line++) {
+                    long ours = board.getLine(player, axis, line);
+                    if (Long.bitCount(ours) < 3) {
+                        continue;
+                    }
+                    long empty = board.getEmptyLine(axis, line);
+                    addCells(axis, line, BitBoard.matchOpenFour(ours, empty), cells);
+                }
+            }
+        }
+
+        /**
+         * Adds the cells on which the player would make an open three to the cell set
+         */
+        public void addOpenThreeCells(Player player, long[] cells) {
+            for (Axis axis : Axis.ALL) {
+                for (int line = 0; line < axis.getLineCount(); line++) {
+                    long ours = board.getLine(player, axis, line);
+                    if (Long.bitCount(ours) < 2) {
+                        continue;
+                    }
+                    long empty = board.getEmptyLine(axis, line);
+                    addCells(axis, line, BitBoard.matchOpenThree(ours, empty), cells);
+                }
+            }
+        }
+
+        /**
+         * Adds the cells on which the player would capture to the cell set
+         */
+        public void addCaptureCells(Player player, long[] cells) {
+            for (Axis axis : Axis.ALL) {
+                for (int line = 0; line < axis.getLineCount(); line++) {
+                    addCells(axis, line, getCaptureBits(player, axis, line), cells);
+                }
+            }
+        }
+
+        /**
+         * Adds the cells of the 4 lines through (i, j) on which the player wins right away, see addWinningCells
+         */
+        public void addWinningCellsThrough(Player player, int i, int j, long[] cells) {
+            int capturesSoFar = getCaptures(player);
+            for (Axis axis : Axis.ALL) {
+                int line = axis.lineIndex(i, j);
+                long ours = board.getLine(player, axis, line);
+                if (Long.bitCount(ours) >= 4) {
+                    addCells(axis, line, BitBoard.matchFive(ours, board.getEmptyLine(axis, line)), cells);
+                }
+                if (capturesSoFar == 0) {
+                    continue;
+                }
+                for (long bits = getCaptureBits(player, axis, line); bits != 0; bits &= bits - 1) {
+                    int cell = axis.cellIndex(line, Long.numberOfTrailingZeros(bits));
+                    int move = encodeMove(player, cell / Constants.DIMS, cell % Constants.DIMS);
+                    if (capturesSoFar + Move.getCaptureCount(move) >= Constants.WIN_CAPTURES_NEEDED) {
+                        cells[cell >>> 6] |= 1L << cell;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the cells of the 4 lines through (i, j) on which the player would capture or make a four
+         */
+        public void addCaptureAndFourCellsThrough(Player player, int i, int j, long[] cells) {
+            for (Axis axis : Axis.ALL) {
+                int line = axis.lineIndex(i, j);
+                addCells(axis, line, getCaptureBits(player, axis, line), cells);
+                long ours = board.getLine(player, axis, line);
+                if (Long.bitCount(ours) >= 3) {
+                    addCells(axis, line, BitBoard.matchFour(ours, board.getEmptyLine(axis, line)), cells);
+                }
+            }
+        }
+
+        /**
+         * Adds the cells of the 4 lines through (i, j) on which the player would capture
+         */
+        public void addCaptureCellsThrough(Player player, int i, int j, long[] cells) {
+            for (Axis axis : Axis.ALL) {
+                int line = axis.lineIndex(i, j);
+                addCells(axis, line, getCaptureBits(player, axis, line), cells);
+            }
+        }
+
+        private long getCaptureBits(Player player, Axis axis, int line) {
+            long ours = board.getLine(player, axis, line);
+            long theirs = board.getLine(player.opponent(), axis, line);
+            if (ours == 0 || Long.bitCount(theirs) < 2) {
+                return 0;
+            }
+            long empty = board.getEmptyLine(axis, line);
+            return BitBoard.matchCapture(ours, theirs, empty, +1) | BitBoard.matchCapture(ours, theirs, empty, -1);
+        }
+
+        private void addCells(Axis axis, int line, long bits, long[] cells) {
+            for (; bits != 0; bits &= bits - 1) {
+                int cell = axis.cellIndex(line, Long.numberOfTrailingZeros(bits));
+                cells[cell >>> 6] |= 1L << cell;
+            }
+        }
+
+        private void hashCaptures() {
+            hash ^= Zobrist.captures(us, ourCaptures) ^ Zobrist.captures(us.opponent(), theirCaptures);
+        }
+
+        public void printBoard() {
+            StringBuilder builder = new StringBuilder();
+            Player[][] board = getBoard();
+            for (int i = 0; i < Constants.DIMS; i++) {
+                String row = Arrays.stream(board[i])
+                        .map(Player::getLabel)
+                        .collect(Collectors.joining(""));
+                row += "\n";
+                builder.append(row);
+            }
+            System.out.println(builder);
+        }
+
+        /**
+         * Materialises the bitboards into a fresh grid, so callers such as the FileHandler can keep working on rows
+         */
+        public Player[][] getBoard() {
+            return board.toGrid();
+        }
+
+        private int getScore(Player player) {
+            /* Get the number of current captures */
+            int captureScore = 0;
+            if (player == us) {
+                captureScore = 10_000 * ourCaptures;
+            }
+            else if (player == us.opponent()) {
+                captureScore = 10_000 * theirCaptures;
+            }
+            /* Get the possible captures and open 4s, 3s and 2s, kept up to date by commit and rollback */
+            int patternScore = patternScores[player.ordinal()];
+
+            /* Get the number of player pieces on the board */
+            int piecesScore = board.countPieces(player);
+
+            return captureScore + patternScore + piecesScore;
+        }
+
+        /**
+         * Every pattern scored by the evaluation lies on a single line, so the score of a player is the sum of its line
+         * scores. A piece placed or removed on (i, j) can only change the scores of the 4 lines passing through it
+         */
+        private int getLineScore(Player player, Axis axis, int line) {
+            return LinePatterns.score(board.getLine(player, axis, line), board.getLine(player.opponent(), axis, line),
+                    BitBoard.getOffLine(axis, line));
+        }
+
+        private void initPatternScores() {
+            for (Player player : Player.PLAYERS) {
+                for (Axis axis : Axis.ALL) {
+                    for (int line = 0; line < axis.getLineCount(); line++) {
+                        int score = getLineScore(player, axis, line);
+                        lineScores[player.ordinal()][axis.ordinal()][line] = score;
+                        patternScores[player.ordinal()] += score;
+                    }
+                }
+            }
+        }
+
+        private void rescoreLines(int cell) {
+            for (Player player : Player.PLAYERS) {
+                int p = player.ordinal();
+                for (Axis axis : Axis.ALL) {
+                    int line = axis.lineIndex(cell);
+                    int score = getLineScore(player, axis, line);
+                    patternScores[p] += score - lineScores[p][axis.ordinal()][line];
+                    lineScores[p][axis.ordinal()][line] = score;
+                    updateThreats(player, axis, line);
+                }
+            }
+        }
+
+        /**
+         * Fours and captures lie on a single line too, so a piece placed or removed on (i, j) can only change the
+         * threats of the 4 lines passing through it
+         */
+        private int getLineThreats(Player player, Axis axis, int line) {
+            int threats = 0;
+            long ours = board.getLine(player, axis, line);
+            if (Long.bitCount(ours) >= 4 && BitBoard.matchFive(ours, board.getEmptyLine(axis, line)) != 0) {
+                threats |= FOUR_THREAT;
+            }
+            if (getCaptureBits(player, axis, line) != 0) {
+                threats |= CAPTURE_THREAT;
+            }
+            return threats;
+        }
+
+        private void initThreats() {
+            for (Player player : Player.PLAYERS) {
+                for (Axis axis : Axis.ALL) {
+                    for (int line = 0; line < axis.getLineCount(); line++) {
+                        updateThreats(player, axis, line);
+                    }
+                }
+            }
+        }
+
+        private void updateThreats(Player player, Axis axis, int line) {
+            int p = player.ordinal();
+            int threats = getLineThreats(player, axis, line);
+            int changed = threats ^ lineThreats[p][axis.ordinal()][line];
+            if (changed == 0) {
+                return;
+            }
+            if ((changed & FOUR_THREAT) != 0) {
+                fourLines[p] += (threats & FOUR_THREAT) != 0 ? 1 : -1;
+            }
+            if ((changed & CAPTURE_THREAT) != 0) {
+                captureLines[p] += (threats & CAPTURE_THREAT) != 0 ? 1 : -1;
+            }
+            lineThreats[p][axis.ordinal()][line] = threats;
+        }
+
+        private void placeStone(Player player, int cell) {
+            board.place(player, cell);
+            hash ^= Zobrist.piece(player, cell);
+            rescoreLines(cell);
+            addToFrontier(cell);
+        }
+
+        private void removeStone(int cell) {
+            hash ^= Zobrist.piece(board.get(cell), cell);
+            board.remove(cell);
+            rescoreLines(cell);
+            removeFromFrontier(cell);
+        }
+
+        private void tryMove(int move) {
+            placePiece(move);
+            removeCapturedPieces(move);
+        }
+
+        private void undoTryMove(int move) {
+            removePiece(move);
+            placeCapturedPieces(move);
+        }
+
+        private void placePiece(int move) {
+            /* Place our piece */
+            placeStone(Move.getPlayer(move), Move.getCell(move));
+        }
+
+        /*
+         * The capture mask only holds directions in which the two captured pieces lie on the board, so they are found
+         * by stepping the cell index by the direction's offset, without bounds checks
+         */
+        private void removeCapturedPieces(int move) {
+            /* Apply captures */
+            int cell = Move.getCell(move);
+            for (int mask = Move.getCaptureMask(move); mask != 0; mask &= mask - 1) {
+                int offset = Direction.ALL[Integer.numberOfTrailingZeros(mask)].getOffset();
+                removeStone(cell + offset);
+                removeStone(cell + 2 * offset);
+            }
+        }
+
+        private void removePiece(int move) {
+            /* Remove our piece */
+            removeStone(Move.getCell(move));
+        }
+
+        private void placeCapturedPieces(int move) {
+            Player opponent = Move.getPlayer(move).opponent();
+            int cell = Move.getCell(move);
+
+            /* Undo captures */
+            for (int mask = Move.getCaptureMask(move); mask != 0; mask &= mask - 1) {
+                int offset = Direction.ALL[Integer.numberOfTrailingZeros(mask)].getOffset();
+                placeStone(opponent, cell + offset);
+                placeStone(opponent, cell + 2 * offset);
+            }
+        }
+
+        /**
+         * A player has one if they have
+         *     1. Made the required number of captures
+         *     2. Made a 5-in-a-row
+         */
+        private boolean isWinningMove(int move, int capturesSoFar) {
+            /* Check if the player has made at least 5 captures with this move */
+            if (capturesSoFar >= Constants.WIN_CAPTURES_NEEDED) {
+                return true;
+            }
+
+            /* Check if the player has a 5-in-a-row through this move */
+            int cell = Move.getCell(move);
+            for (Axis axis : Axis.ALL) {
+                int line = axis.lineIndex(cell);
+                int bit = axis.bitIndex(cell);
+                if (BitBoard.hasRunThrough(board.getLine(Move.getPlayer(move), axis, line), bit, Constants.WIN_COINS_NEEDED)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * The game is tied if no more intersections are left to make moves onto
+         * IMPORTANT: This must be called after isWinningMove, as the last move on the board can be a winning move
+         */
+        public boolean isGameTied() {
+            int count = board.countPieces(Player.WHITE) + board.countPieces(Player.BLACK);
+            return count == Constants.DIMS * Constants.DIMS;
+        }
+
+        /**
+         * A capture occurs when we surround 2 consecutive opponent pieces by 2 of our own (i.e. X00X or 0XX0)
+         * This method returns true if a capture can occur in a given direction if we place our piece on the cell.
+         * The line through the cell along the direction's axis is matched against the capture shape in one go: the
+         * cell must be empty, the next two intersections must be the opponent's and the third one must be ours
+         */
+        private boolean checkPossibleCapture(Player player, int cell, Direction direction) {
+            Axis axis = direction.getAxis();
+            int line = axis.lineIndex(cell);
+            long captures = BitBoard.matchCapture(
+                    board.getLine(player, axis, line),
+                    board.getLine(player.opponent(), axis, line),
+                    board.getEmptyLine(axis, line),
+                    direction.getStep()
+            );
+            return (captures & (1L << axis.bitIndex(cell))) != 0;
+        }
+
+        private boolean outOfBounds(int i, int j) {
+            return i < 0 || j < 0 || i >= Constants.DIMS || j >= Constants.DIMS;
+        }
+    }
+
+    /**
+     * Random keys for Zobrist hashing. The keys are drawn from a fixed seed so that hashes are stable across runs
+     */
+    public static class Zobrist {
+
+        private static final int MAX_CAPTURES = 16;
+
+        private static final long[][] PIECES = new long[2][Constants.DIMS * Constants.DIMS];
+
+        private static final long[][] CAPTURES = new long[2][MAX_CAPTURES];
+
+        private static final long SIDE_TO_MOVE;
+
+        static {
+            Random random = new Random(Constants.ZOBRIST_SEED);
+            for (int p = 0; p < 2; p++) {
+                for (int cell = 0; cell < PIECES[p].length; cell++) {
+                    PIECES[p][cell] = random.nextLong();
+                }
+                for (int count = 0; count < MAX_CAPTURES; count++) {
+                    CAPTURES[p][count] = random.nextLong();
+                }
+            }
+            SIDE_TO_MOVE = random.nextLong();
+        }
+
+        public static long piece(Player player, int i, int j) {
+            return PIECES[player.ordinal()][i * Constants.DIMS + j];
+        }
+
+        public static long piece(Player player, int cell) {
+            return PIECES[player.ordinal()][cell];
+        }
+
+        public static long captures(Player player, int count) {
+            return CAPTURES[player.ordinal()][Math.min(count, MAX_CAPTURES - 1)];
+        }
+
+        /**
+         * Toggled on every move, the key is part of the hash whenever it is black's turn to move
+         */
+        public static long sideToMove() {
+            return SIDE_TO_MOVE;
+        }
+    }
+
+    /**
+     * A fixed-size hash table of search results, indexed by the low bits of the Zobrist hash. Each slot keeps a single
+     * packed entry word holding the score, the remaining depth, the bound type and the best move, next to the hash
+     * XOR-ed with that entry. The table is shared by search threads without locks: a slot torn by concurrent writes no
+     * longer verifies against the hash, and reads as a miss
+     */
+    public static class TranspositionTable {
+
+        public static final int NO_MOVE = -1;
+
+        /* Probe result when the table holds no entry for the hash, no stored entry is ever 0 as its depth is non-zero */
+        public static final long MISS = 0;
+
+        private final long[] keys;
+
+        private final long[] entries;
+
+        private final int mask;
+
+        private final ReplacementPolicy policy;
+
+        public TranspositionTable(int sizeLog2, ReplacementPolicy policy) {
+            this.keys = new long[1 << sizeLog2];
+            this.entries = new long[1 << sizeLog2];
+            this.mask = (1 << sizeLog2) - 1;
+            this.policy = policy;
+        }
+
+        /**
+         * Returns the entry stored for the given hash, or MISS if there is none. The entry is a snapshot, read its
+         * fields with the static getters
+         */
+        public long probe(long hash) {
+            int slot = (int) hash & mask;
+            long entry = entries[slot];
+            if (entry == MISS || (keys[slot] ^ entry) != hash) {
+                return MISS;
+            }
+            return entry;
+        }
+
+        public static long getScore(long entry) {
+            return (int) entry;
+        }
+
+        public static int getDepth(long entry) {
+            return (int) (entry >>> 32) & 0xFF;
+        }
+
+        public static Bound getBound(long entry) {
+            return Bound.ALL[(int) (entry >>> 40) & 0x3];
+        }
+
+        /**
+         * Returns the best move as a cell index (i * DIMS + j), or NO_MOVE
+         */
+        public static int getMove(long entry) {
+            return ((int) (entry >>> 42) & 0x3FF) - 1;
+        }
+
+        public void store(long hash, int depth, Bound bound, long score, int move) {
+            int slot = (int) hash & mask;
+            long current = entries[slot];
+            if (policy == ReplacementPolicy.DEPTH_PREFERRED && current != MISS && (keys[slot] ^ current) != hash && getDepth(current) > depth) {
+                return;
+            }
+            long entry = (score & 0xFFFFFFFFL)
+                    | ((long) depth & 0xFF) << 32
+                    | (long) bound.ordinal() << 40
+                    | ((long) move + 1) << 42;
+            keys[slot] = hash ^ entry;
+            entries[slot] = entry;
+        }
+
+        public void clear() {
+            Arrays.fill(keys, 0);
+            Arrays.fill(entries, 0);
+        }
+
+        public int getCapacity() {
+            return entries.length;
+        }
+
+        /**
+         * Returns the entry in a slot, or MISS if it is empty. Together with getHash, for walking the whole table
+         */
+        public long getEntry(int slot) {
+            return entries[slot];
+        }
+
+        public long getHash(int slot) {
+            return keys[slot] ^ entries[slot];
+        }
+
+        /**
+         * Puts an entry back in its slot, as read from getEntry, regardless of the replacement policy
+         */
+        public void restore(long hash, long entry) {
+            int slot = (int) hash & mask;
+            keys[slot] = hash ^ entry;
+            entries[slot] = entry;
+        }
+    }
+
+    /**
+     * Keeps the transposition table and the principal variation across runs, in a sidecar file next to the play data.
+     * The file layout, in big-endian order, is:
+     *     1. a header of the MAGIC int, the ZOBRIST_SEED long, the table's capacity, the player, the turn it was saved
+     *        on, the number of principal variation entries, the number of table entries, and the CRC32 of the body
+     *     2. the body: the principal variation entries, then the table entries, each a long hash and a long entry word
+     * The principal variation entries are restored last, so that they win over any entry colliding with them. A file
+     * that was not saved on our previous turn of this game, or that fails any check, is ignored
+     */
+    public static class SearchCache {
+
+        public static final int MAGIC = 0x50534331;
+
+        private static final int HEADER_BYTES = 40;
+
+        private static final int ENTRY_BYTES = 16;
+
+        /**
+         * Returns the saved table if the file holds a sound one from our previous turn, else an empty table
+         */
+        public static TranspositionTable load(String path, Configuration configuration) {
+            TranspositionTable table = new TranspositionTable(Constants.TT_SIZE_LOG2, Constants.TT_REPLACEMENT_POLICY);
+            Path file = Paths.get(path);
+            if (!Files.isRegularFile(file)) {
+                return table;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long length = channel.size();
+                if (length < HEADER_BYTES) {
+                    return table;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                int pvCount = buffer.getInt(24);
+                int entryCount = buffer.getInt(28);
+                if (buffer.getInt(0) != MAGIC
+                        || buffer.getLong(4) != Constants.ZOBRIST_SEED
+                        || buffer.getInt(12) != table.getCapacity()
+                        || buffer.getInt(16) != configuration.getPlayer().ordinal()
+                        || buffer.getInt(20) != configuration.getTurn() - 1
+                        || pvCount < 0 || entryCount < 0
+                        || length != HEADER_BYTES + ((long) pvCount + entryCount) * ENTRY_BYTES) {
+                    return table;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(buffer.slice(HEADER_BYTES, (int) length - HEADER_BYTES));
+                if (crc.getValue() != buffer.getLong(32)) {
+                    return table;
+                }
+
+                /* The principal variation comes first in the file, but is restored last */
+                int body = HEADER_BYTES + pvCount * ENTRY_BYTES;
+                for (int index = 0; index < entryCount; index++) {
+                    int offset = body + index * ENTRY_BYTES;
+                    table.restore(buffer.getLong(offset), buffer.getLong(offset + 8));
+                }
+                for (int index = 0; index < pvCount; index++) {
+                    int offset = HEADER_BYTES + index * ENTRY_BYTES;
+                    table.restore(buffer.getLong(offset), buffer.getLong(offset + 8));
+                }
+                return table;
+            }
+            catch (IOException e) {
+                table.clear();
+                return table;
+            }
+        }
+
+        /**
+         * Saves the table, and the principal variation it holds from the position of the move manager, for our next turn
+         */
+        public static void save(String path, TranspositionTable table, MoveManager moveManager, Configuration configuration) throws IOException {
+            long[] pv = getPrincipalVariation(table, moveManager, configuration.getPlayer());
+            int entryCount = 0;
+            for (int slot = 0; slot < table.getCapacity(); slot++) {
+                if (table.getEntry(slot) != TranspositionTable.MISS) {
+                    entryCount++;
+                }
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (pv.length / 2 + entryCount) * ENTRY_BYTES).order(ByteOrder.BIG_ENDIAN);
+            buffer.position(HEADER_BYTES);
+            buffer.asLongBuffer().put(pv);
+            buffer.position(HEADER_BYTES + pv.length * 8);
+            for (int slot = 0; slot < table.getCapacity(); slot++) {
+                long entry = table.getEntry(slot);
+                if (entry != TranspositionTable.MISS) {
+                    buffer.putLong(table.getHash(slot)).putLong(entry);
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), HEADER_BYTES, buffer.capacity() - HEADER_BYTES);
+
+            buffer.putInt(0, MAGIC)
+                    .putLong(4, Constants.ZOBRIST_SEED)
+                    .putInt(12, table.getCapacity())
+                    .putInt(16, configuration.getPlayer().ordinal())
+                    .putInt(20, configuration.getTurn())
+                    .putInt(24, pv.length / 2)
+                    .putInt(28, entryCount)
+                    .putLong(32, crc.getValue());
+
+            /* Write to a temporary file and move it in place, so that a run cut short never leaves a partial file */
+            Path file = Paths.get(path);
+            Path temporary = Paths.get(path + ".tmp");
+            Files.write(temporary, buffer.array());
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Follows the hash moves of the table from the position, and returns the hash and entry of each position on the
+         * way, interleaved
+         */
+        private static long[] getPrincipalVariation(TranspositionTable table, MoveManager moveManager, Player us) {
+            MoveManager position = new MoveManager(moveManager);
+            Player player = us;
+            long[] pv = new long[2 * Constants.PV_MAX_LENGTH];
+            int length = 0;
+            while (length < Constants.PV_MAX_LENGTH) {
+                long hash = position.getHash();
+                long entry = table.probe(hash);
+                int cell = TranspositionTable.getMove(entry);
+                if (entry == TranspositionTable.MISS || cell == TranspositionTable.NO_MOVE
+                        || !position.isEmpty(cell / Constants.DIMS, cell % Constants.DIMS)) {
+                    break;
+                }
+                pv[2 * length] = hash;
+                pv[2 * length + 1] = entry;
+                length++;
+                int move = position.encodeMove(player, cell / Constants.DIMS, cell % Constants.DIMS);
+                position.commit(move);
+                if (player == us ? position.haveWeWon(move) : position.haveTheyWon(move)) {
+                    break;
+                }
+                player = player.opponent();
+            }
+            return Arrays.copyOf(pv, 2 * length);
+        }
+    }
+
+    /**
+     * A compact binary record of whole games, written and replayed as a stream, so that millions of games fit in
+     * memory and load at disk speed. Every game starts from the empty board with white to move, and the players
+     * alternate. The file layout, in big-endian order, is:
+     *     1. a header of the MAGIC int and the int checkpoint interval, in moves, 0 for none
+     *     2. the games, one after another, each a sequence of 2 byte entries whose low 9 bits are
+     *         - a cell index (i * DIMS + j) for a move. Bit 9 is set if the move captures, and the Move capture mask
+     *           follows in one byte
+     *         - CHECKPOINT, followed by the board after the last move, 2 bits per cell (0 empty, 1 white, 2 black) in
+     *           cell order from the high bits of each byte, then the captures of white and of black, one byte each
+     *         - END, ending the game, with the ordinal of the winner (NONE for a draw) in bits 9 and 10
+     */
+    public static class GameRecord {
+
+        public static final int MAGIC = 0x50475231;
+
+        private static final int HEADER_BYTES = 8;
+
+        private static final int CELL_MASK = 0x1FF;
+
+        private static final int CAPTURES_FOLLOW = 1 << 9;
+
+        private static final int CHECKPOINT = 510;
+
+        private static final int END = 511;
+
+        private static final int WINNER_SHIFT = 9;
+
+        private static final int BOARD_BYTES = (2 * Constants.DIMS * Constants.DIMS + 7) / 8;
+
+        private static final int CHECKPOINT_BYTES = BOARD_BYTES + 2;
+
+        private static final int READ_BUFFER_BYTES = 1 << 20;
+
+        private GameRecord() {
+        }
+
+        /**
+         * Receives the games of a record as they are replayed. The position is the same move manager throughout, seen
+         * from white's side, and is only valid during the call
+         */
+        public interface Visitor {
+
+            /**
+             * Called after each move is played, with the position after it
+             */
+            void move(MoveManager position, int move);
+
+            /**
+             * Called at the end of each game, with its final position and its winner, NONE for a draw
+             */
+            void endGame(MoveManager position, Player winner);
+        }
+
+        /**
+         * Replays every game of the record through one move manager, and returns the number of games. The stored
+         * captures of every move and the checkpoints are checked against the replayed position
+         */
+        public static long replay(String path, Visitor visitor) throws IOException {
+            try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES).order(ByteOrder.BIG_ENDIAN);
+                buffer.flip();
+                if (!fill(channel, buffer, HEADER_BYTES) || buffer.getInt() != MAGIC) {
+                    throw new IllegalArgumentException(String.format("%s is not a game record", path));
+                }
+                buffer.getInt();
+
+                MoveManager position = newGame();
+                int[] moves = new int[Constants.DIMS * Constants.DIMS];
+                int count = 0;
+                long games = 0;
+                Player toMove = Player.WHITE;
+                while (fill(channel, buffer, 2)) {
+                    int entry = buffer.getShort() & 0xFFFF;
+                    int code = entry & CELL_MASK;
+                    if (code == END) {
+                        visitor.endGame(position, Player.values()[entry >>> WINNER_SHIFT]);
+                        for (int index = count - 1; index >= 0; index--) {
+                            position.rollback(moves[index]);
+                        }
+                        count = 0;
+                        toMove = Player.WHITE;
+                        games++;
+                    }
+                    else if (code == CHECKPOINT) {
+                        if (!fill(channel, buffer, CHECKPOINT_BYTES)) {
+                            throw new IllegalArgumentException(String.format("%s ends inside a checkpoint", path));
+                        }
+                        checkCheckpoint(buffer, position, path, games);
+                    }
+                    else {
+                        int captureMask = 0;
+                        if ((entry & CAPTURES_FOLLOW) != 0) {
+                            if (!fill(channel, buffer, 1)) {
+                                throw new IllegalArgumentException(String.format("%s ends inside a move", path));
+                            }
+                            captureMask = buffer.get() & 0xFF;
+                        }
+                        if (code >= Constants.DIMS * Constants.DIMS || !position.isEmpty(code / Constants.DIMS, code % Constants.DIMS)) {
+                            throw new IllegalArgumentException(String.format("%s: game %d plays on cell %d, which is not free", path, games, code));
+                        }
+                        int move = position.encodeMove(toMove, code / Constants.DIMS, code % Constants.DIMS);
+                        if (Move.getCaptureMask(move) != captureMask) {
+                            throw new IllegalArgumentException(String.format("%s: game %d stores the captures %d on cell %d, the board makes %d",
+                                    path, games, captureMask, code, Move.getCaptureMask(move)));
+                        }
+                        position.commit(move);
+                        if (count == moves.length) {
+                            moves = Arrays.copyOf(moves, 2 * count);
+                        }
+                        moves[count++] = move;
+                        visitor.move(position, move);
+                        toMove = toMove.opponent();
+                    }
+                }
+                if (count > 0) {
+                    throw new IllegalArgumentException(String.format("%s ends inside game %d", path, games));
+                }
+                return games;
+            }
+        }
+
+        /**
+         * Makes sure the buffer holds at least the given number of bytes, reading more from the channel if needed.
+         * Returns false at the end of the file if the buffer is empty, and throws if it ends part way
+         */
+        private static boolean fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            if (buffer.remaining() == 0) {
+                return false;
+            }
+            if (buffer.remaining() < bytes) {
+                throw new IllegalArgumentException(String.format("The game record ends part way through an entry of %d bytes", bytes));
+            }
+            return true;
+        }
+
+        private static void checkCheckpoint(ByteBuffer buffer, MoveManager position, String path, long game) {
+            int bits = 0;
+            int pending = 0;
+            for (int cell = 0; cell < Constants.DIMS * Constants.DIMS; cell++) {
+                if (pending == 0) {
+                    bits = buffer.get() & 0xFF;
+                    pending = 4;
+                }
+                pending--;
+                int stored = bits >>> 2 * pending & 3;
+                Player player = position.getPiece(cell / Constants.DIMS, cell % Constants.DIMS);
+                if (stored != (player == Player.NONE ? 0 : player.ordinal() + 1)) {
+                    throw new IllegalStateException(String.format("%s: game %d does not match its checkpoint at cell %d", path, game, cell));
+                }
+            }
+            int capturesByWhite = buffer.get() & 0xFF;
+            int capturesByBlack = buffer.get() & 0xFF;
+            if (capturesByWhite != position.getCaptures(Player.WHITE) || capturesByBlack != position.getCaptures(Player.BLACK)) {
+                throw new IllegalStateException(String.format("%s: game %d does not match the captures of its checkpoint", path, game));
+            }
+        }
+
+        private static MoveManager newGame() {
+            Player[][] board = new Player[Constants.DIMS][Constants.DIMS];
+            for (Player[] row : board) {
+                Arrays.fill(row, Player.NONE);
+            }
+            return new MoveManager(new Configuration(board, Player.WHITE, 0f, 0, 0, 1));
+        }
+
+        /**
+         * Streams games to a record, one move at a time. The writer plays the moves on its own board, to check that
+         * they alternate and to write the checkpoints. Not safe for use from several threads at once
+         */
+        public static class Writer implements Closeable {
+
+            private final DataOutputStream output;
+
+            private final int checkpointInterval;
+
+            private MoveManager position = newGame();
+
+            private Player toMove = Player.WHITE;
+
+            private int count;
+
+            public Writer(String path, int checkpointInterval) throws IOException {
+                if (checkpointInterval < 0) {
+                    throw new IllegalArgumentException(String.format("The checkpoint interval cannot be negative, got %d", checkpointInterval));
+                }
+                this.checkpointInterval = checkpointInterval;
+                this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(path))));
+                output.writeInt(MAGIC);
+                output.writeInt(checkpointInterval);
+            }
+
+            /**
+             * Appends the move, encoded as by MoveManager.encodeMove, to the current game
+             */
+            public void writeMove(int move) throws IOException {
+                if (Move.getPlayer(move) != toMove) {
+                    throw new IllegalArgumentException(String.format("Expected a move of %s, got one of %s", toMove, Move.getPlayer(move)));
+                }
+                int captureMask = Move.getCaptureMask(move);
+                output.writeShort(Move.getCell(move) | (captureMask != 0 ? CAPTURES_FOLLOW : 0));
+                if (captureMask != 0) {
+                    output.writeByte(captureMask);
+                }
+                position.commit(move);
+                toMove = toMove.opponent();
+                count++;
+                if (checkpointInterval > 0 && count % checkpointInterval == 0) {
+                    writeCheckpoint();
+                }
+            }
+
+            /**
+             * Ends the current game, the next move starts a new one
+             */
+            public void endGame(Player winner) throws IOException {
+                output.writeShort(END | winner.ordinal() << WINNER_SHIFT);
+                position = newGame();
+                toMove = Player.WHITE;
+                count = 0;
+            }
+
+            private void writeCheckpoint() throws IOException {
+                output.writeShort(CHECKPOINT);
+                int bits = 0;
+                int pending = 0;
+                for (int cell = 0; cell < Constants.DIMS * Constants.DIMS; cell++) {
+                    Player player = position.getPiece(cell / Constants.DIMS, cell % Constants.DIMS);
+                    bits = bits << 2 | (player == Player.NONE ? 0 : player.ordinal() + 1);
+                    if (++pending == 4) {
+                        output.writeByte(bits);
+                        bits = 0;
+                        pending = 0;
+                    }
+                }
+                output.writeByte(bits << 2 * (4 - pending));
+                output.writeByte(position.getCaptures(Player.WHITE));
+                output.writeByte(position.getCaptures(Player.BLACK));
+            }
+
+            /**
+             * Closes the record, and reports a game left unfinished once the stream is closed
+             */
+            @Override
+            public void close() throws IOException {
+                output.close();
+                if (count > 0) {
+                    throw new IllegalStateException(String.format("The record is closed part way through a game of %d moves", count));
+                }
+            }
+        }
+    }
+
+    /**
+     * A read-only book of opening moves, memory mapped from a file of fixed-size entries sorted by position hash. Each
+     * position is stored once for all 8 of its symmetric versions: under the smallest of their hashes, with the move
+     * mirrored or rotated the same way. The file layout, in big-endian order, is:
+     *     1. a header of the MAGIC int and the int number of entries
+     *     2. the entries, each a long canonical hash and an int cell index (i * DIMS + j) of the move
+     */
+    public static class OpeningBook {
+
+        public static final int MAGIC = 0x50424B31;
+
+        public static final OpeningBook EMPTY = new OpeningBook(ByteBuffer.allocate(0), 0);
+
+        private static final int HEADER_BYTES = 8;
+
+        private static final int ENTRY_BYTES = 12;
+
+        private final ByteBuffer entries;
+
+        private final int size;
+
+        private OpeningBook(ByteBuffer entries, int size) {
+            this.entries = entries;
+            this.size = size;
+        }
+
+        /**
+         * Maps the book at the given path. A missing or malformed book is empty rather than an error, so that a game is
+         * never lost for want of a book
+         */
+        public static OpeningBook open(String path) {
+            Path file = Paths.get(path);
+            if (!Files.isRegularFile(file)) {
+                return EMPTY;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long length = channel.size();
+                if (length < HEADER_BYTES) {
+                    return EMPTY;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                int size = buffer.getInt(4);
+                if (buffer.getInt(0) != MAGIC || size < 0 || length != HEADER_BYTES + (long) size * ENTRY_BYTES) {
+                    return EMPTY;
+                }
+                return new OpeningBook(buffer, size);
+            }
+            catch (IOException e) {
+                return EMPTY;
+            }
+        }
+
+        /**
+         * Writes a book of canonical hashes to cell indexes, as built by {@link #getCanonicalHash}
+         */
+        public static void write(String path, Map<Long, Integer> moves) throws IOException {
+            long[] hashes = moves.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + hashes.length * ENTRY_BYTES).order(ByteOrder.BIG_ENDIAN);
+            buffer.putInt(MAGIC).putInt(hashes.length);
+            for (long hash : hashes) {
+                buffer.putLong(hash).putInt(moves.get(hash));
+            }
+            Files.write(Paths.get(path), buffer.array());
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the book move of the player, who must be the one to move, encoded, or Move.NONE if the position is not in the book or its
+         * move is not a legal one
+         */
+        public int lookup(MoveManager moveManager, Player player) {
+            if (size == 0) {
+                return Move.NONE;
+            }
+            Symmetry symmetry = getCanonicalSymmetry(moveManager);
+            long hash = moveManager.getHash(symmetry);
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleHash = entries.getLong(HEADER_BYTES + middle * ENTRY_BYTES);
+                if (middleHash < hash) {
+                    low = middle + 1;
+                }
+                else if (middleHash > hash) {
+                    high = middle - 1;
+                }
+                else {
+                    int cell = symmetry.inverse().transform(entries.getInt(HEADER_BYTES + middle * ENTRY_BYTES + 8));
+                    return toLegalMove(moveManager, player, cell);
+                }
+            }
+            return Move.NONE;
+        }
+
+        /**
+         * Returns the hash the book keeps the position under, the smallest of the hashes of its symmetric versions
+         */
+        public static long getCanonicalHash(MoveManager moveManager) {
+            return moveManager.getHash(getCanonicalSymmetry(moveManager));
+        }
+
+        /**
+         * Returns the symmetry taking the position to its canonical version
+         */
+        public static Symmetry getCanonicalSymmetry(MoveManager moveManager) {
+            Symmetry canonical = Symmetry.IDENTITY;
+            long smallest = moveManager.getHash(canonical);
+            for (Symmetry symmetry : Symmetry.ALL) {
+                long hash = moveManager.getHash(symmetry);
+                if (hash < smallest) {
+                    smallest = hash;
+                    canonical = symmetry;
+                }
+            }
+            return canonical;
+        }
+
+        private static int toLegalMove(MoveManager moveManager, Player player, int cell) {
+            int[] moves = new int[Constants.DIMS * Constants.DIMS];
+            int count = moveManager.generateMoves(player, moves);
+            for (int index = 0; index < count; index++) {
+                if (Move.getCell(moves[index]) == cell) {
+                    return moves[index];
+                }
+            }
+            return Move.NONE;
+        }
+    }
+
+    public enum Bound {
+
+        /* The score is the exact minimax value */
+        EXACT,
+        /* The minimax value is at least the score */
+        LOWER,
+        /* The minimax value is at most the score */
+        UPPER;
+
+        /* values() copies the array on every call, index into this one instead */
+        public static final Bound[] ALL = values();
+    }
+
+    public enum Engine {
+
+        /* Iterative deepening alpha-beta search, the PenteAgent */
+        MINIMAX,
+        /* Monte Carlo tree search, the MctsAgent */
+        MCTS
+    }
+
+    public enum ParallelMode {
+
+        /*
+         * Root moves are split across the threads, each thread searching a share of them at the same depth. The move
+         * chosen may differ from that of a single threaded search, see searchRootInParallel
+         */
+        ROOT_SPLIT,
+        /* Every thread runs its own iterative deepening, sharing results through the transposition table */
+        LAZY_SMP
+    }
+
+    public enum ReplacementPolicy {
+
+        /* Always overwrite the slot */
+        ALWAYS,
+        /* Keep an entry of another position if it was searched deeper than the new one */
+        DEPTH_PREFERRED
+    }
+
+    /**
+     * Bitboard representation of the board. Each player's pieces are kept as one 64 bit word per line, for every line
+     * along the rows, the columns and both diagonals, so any line pattern (fives, open Ks, capture shapes) becomes a
+     * handful of shifts and masks on a single word. See {@link Axis} for how intersections map onto lines and bits
+     */
+    public static class BitBoard {
+
+        /* Number of words in a set of cells, one bit per cell index i * DIMS + j */
+        public static final int CELL_WORDS = (Constants.DIMS * Constants.DIMS + 63) / 64;
+
+        private static final long[][] VALID = new long[Axis.ALL.length][];
+
+        static {
+            for (Axis axis : Axis.ALL) {
+                VALID[axis.ordinal()] = new long[axis.getLineCount()];
+            }
+            for (int i = 0; i < Constants.DIMS; i++) {
+                for (int j = 0; j < Constants.DIMS; j++) {
+                    for (Axis axis : Axis.ALL) {
+                        VALID[axis.ordinal()][axis.lineIndex(i, j)] |= 1L << axis.bitIndex(i, j);
+                    }
+                }
+            }
+        }
+
+        /* Indexed by player, then axis, then line */
+        private final long[][][] lines = new long[2][Axis.ALL.length][];
+
+        private final int[] pieceCounts = new int[2];
+
+        public BitBoard(Player[][] board) {
+            for (int p = 0; p < 2; p++) {
+                for (Axis axis : Axis.ALL) {
+                    lines[p][axis.ordinal()] = new long[axis.getLineCount()];
+                }
+            }
+            for (int i = 0; i < Constants.DIMS; i++) {
+                for (int j = 0; j < Constants.DIMS; j++) {
+                    if (board[i][j] != Player.NONE) {
+                        place(board[i][j], i, j);
+                    }
+                }
+            }
+        }
+
+        public BitBoard(BitBoard other) {
+            for (int p = 0; p < 2; p++) {
+                for (Axis axis : Axis.ALL) {
+                    lines[p][axis.ordinal()] = other.lines[p][axis.ordinal()].clone();
+                }
+                pieceCounts[p] = other.pieceCounts[p];
+            }
+        }
+
+        public Player get(int i, int j) {
+            long bit = 1L << j;
+            if ((lines[Player.WHITE.ordinal()][Axis.ROW.ordinal()][i] & bit) != 0) {
+                return Player.WHITE;
+            }
+            if ((lines[Player.BLACK.ordinal()][Axis.ROW.ordinal()][i] & bit) != 0) {
+                return Player.BLACK;
+            }
+            return Player.NONE;
+        }
+
+        public Player get(int cell) {
+            return get(cell / Constants.DIMS, cell % Constants.DIMS);
+        }
+
+        public boolean isEmpty(int i, int j) {
+            int row = Axis.ROW.ordinal();
+            return ((lines[0][row][i] | lines[1][row][i]) & (1L << j)) == 0;
+        }
+
+        public void place(Player player, int i, int j) {
+            place(player, i * Constants.DIMS + j);
+        }
+
+        /**
+         * Places the piece on the cell index (i * DIMS + j), setting its bit on the 4 lines through it from the axes'
+         * precomputed tables
+         */
+        public void place(Player player, int cell) {
+            if (player == Player.NONE) {
+                throw new IllegalArgumentException("Player NONE cannot be placed on the board");
             }
-        }
-
-        public void printBoard() {
-            StringBuilder builder = new StringBuilder();
-            for (int i = 0; i < Constants.DIMS; i++) {
-                String row = Arrays.stream(board[i])
-                        .map(Player::getLabel)
-                        .collect(Collectors.joining(""));
-                row += "\n";
-                builder.append(row);
+            if (get(cell) != Player.NONE) {
+                throw new IllegalArgumentException(String.format("Cannot place a piece on an occupied intersection (%d,%d)",
+                        cell / Constants.DIMS, cell % Constants.DIMS));
             }
-            System.out.println(builder);
+            long[][] words = lines[player.ordinal()];
+            for (Axis axis : Axis.ALL) {
+                words[axis.ordinal()][axis.lineIndex(cell)] |= 1L << axis.bitIndex(cell);
+            }
+            pieceCounts[player.ordinal()]++;
         }
 
-        public Player[][] getBoard() {
-            return board;
+        public void remove(int i, int j) {
+            remove(i * Constants.DIMS + j);
         }
 
-        private int getScore(Player player) {
-            /* Get the number of current captures */
-            int captureScore = 0;
-            if (player == us) {
-                captureScore = 10_000 * ourCaptures;
+        public void remove(int cell) {
+            Player player = get(cell);
+            if (player == Player.NONE) {
+                throw new IllegalArgumentException(String.format("Cannot remove a piece from an empty intersection (%d,%d)",
+                        cell / Constants.DIMS, cell % Constants.DIMS));
             }
-            else if (player == us.opponent()) {
-                captureScore = 10_000 * theirCaptures;
+            long[][] words = lines[player.ordinal()];
+            for (Axis axis : Axis.ALL) {
+                words[axis.ordinal()][axis.lineIndex(cell)] &= ~(1L << axis.bitIndex(cell));
             }
-            /* Get the number of possible captures*/
-            int possibleCaptureScore = 10_000 * countPossibleCaptures(player);
-
-            /* Get the number of possible open 4s */
-            int open4Score = 1_000 * countPossibleOpenKs(player, 4);
+            pieceCounts[player.ordinal()]--;
+        }
 
-            /* Get the number of possible open 3s */
-            int open3Score = 100 * countPossibleOpenKs(player, 3);
+        public long getLine(Player player, Axis axis, int line) {
+            return lines[player.ordinal()][axis.ordinal()][line];
+        }
 
-            /* Get the number of open 2s */
-            int open2Score = 10 * countPossibleOpenKs(player, 2);
+        public long getEmptyLine(Axis axis, int line) {
+            int a = axis.ordinal();
+            return VALID[a][line] & ~(lines[0][a][line] | lines[1][a][line]);
+        }
 
-            /* Get the number of player pieces on the board */
-            int piecesScore = countPieces(player);
+        /**
+         * Returns the bits of a line that lie off the board
+         */
+        public static long getOffLine(Axis axis, int line) {
+            return ~VALID[axis.ordinal()][line];
+        }
 
-            return captureScore + possibleCaptureScore + open4Score + open3Score + open2Score + piecesScore;
+        public int countPieces(Player player) {
+            return pieceCounts[player.ordinal()];
         }
 
-        private int countPossibleCaptures(Player player) {
-            int count = 0;
+        public Player[][] toGrid() {
+            Player[][] board = new Player[Constants.DIMS][Constants.DIMS];
             for (int i = 0; i < Constants.DIMS; i++) {
                 for (int j = 0; j < Constants.DIMS; j++) {
-                    if (board[i][j] == Player.NONE) {
-                        for (Direction direction : Direction.values()) {
-                            if (checkPossibleCapture(board, player, i, j, direction)) {
-                                count++;
-                            }
-                        }
-                    }
+                    board[i][j] = get(i, j);
                 }
             }
-            return count;
+            return board;
         }
 
-        private int countPossibleOpenKs(Player player, int K) {
-            int count = 0;
-            for (int i = 0; i < Constants.DIMS; i++) {
-                for (int j = 0; j < Constants.DIMS; j++) {
-                    for (Direction direction : Direction.values()) {
-                        if (checkOpenK(player, K, i, j, direction)) {
-                            count++;
-                        }
+        /**
+         * Shifts a line so that bit b of the result holds the intersection that is distance steps away from b
+         */
+        public static long ahead(long line, int distance, int step) {
+            return step > 0 ? line >>> distance : line << distance;
+        }
+
+        /**
+         * Shifts a line so that bit b of the result holds bit b + distance of the line, for a positive or negative distance
+         */
+        public static long offset(long line, int distance) {
+            return distance >= 0 ? line >>> distance : line << -distance;
+        }
+
+        /**
+         * Returns the empty bits that complete 5 in a row, i.e. some window of 5 through the bit holds 4 of our pieces
+         */
+        public static long matchFive(long ours, long empty) {
+            long match = 0;
+            for (int position = 0; position < Constants.WIN_COINS_NEEDED; position++) {
+                long window = empty;
+                for (int other = 0; other < Constants.WIN_COINS_NEEDED; other++) {
+                    if (other != position) {
+                        window &= offset(ours, other - position);
                     }
                 }
+                match |= window;
             }
-            return count;
+            return match;
         }
 
         /**
-         * Returns true if there's an open K starting from position i, j in the given direction. K intersections including
-         * the current one must be occupied by the current player and there must be atleast 5 - K succeeding empty intersections
+         * Returns the empty bits that make a four, i.e. some window of 5 through the bit holds 3 of our pieces and one
+         * more empty intersection, so that the four threatens to complete 5 in a row on that intersection
          */
-        private boolean checkOpenK(Player player, int K, int i, int j, Direction direction) {
-            int targetI = direction.moveI(i, K + 1);
-            int targetJ = direction.moveJ(j, K + 1);
-
-            if (board[i][j] != player) {
-                return false;
-            }
-            if (outOfBounds(targetI, targetJ)) {
-                return false;
-            }
-            if (board[targetI][targetJ] != Player.NONE) {
-                return false;
-            }
-            if (!checkKInARow(player, K, i, j, direction)) {
-                return false;
+        public static long matchFour(long ours, long empty) {
+            long match = 0;
+            for (int position = 0; position < Constants.WIN_COINS_NEEDED; position++) {
+                for (int gap = 0; gap < Constants.WIN_COINS_NEEDED; gap++) {
+                    if (gap == position) {
+                        continue;
+                    }
+                    long window = empty & offset(empty, gap - position);
+                    for (int other = 0; other < Constants.WIN_COINS_NEEDED; other++) {
+                        if (other != position && other != gap) {
+                            window &= offset(ours, other - position);
+                        }
+                    }
+                    match |= window;
+                }
             }
-
-            int needed = Constants.WIN_COINS_NEEDED - K;
-            return checkKInARow(Player.NONE, needed, targetI, targetJ, direction);
+            return match;
         }
 
         /**
-         * Returns true if there are K consecutive player pieces in a direction, starting from the current coordinate
+         * Returns the empty bits that make an open four, i.e. a window of 6 through the bit with both ends empty and our
+         * pieces on the 3 other inner intersections. An open four threatens 5 in a row on both of its ends
          */
-        private boolean checkKInARow(Player player, int K, int i, int j, Direction direction) {
-            if (outOfBounds(i, j)) {
-                return false;
-            }
-            if (board[i][j] != player) {
-                return false;
-            }
-            while (K > 0 && !outOfBounds(i, j) && board[i][j] == player) {
-                i = direction.moveI(i, 1);
-                j = direction.moveJ(j, 1);
-                K--;
+        public static long matchOpenFour(long ours, long empty) {
+            long match = 0;
+            for (int position = 1; position < Constants.WIN_COINS_NEEDED; position++) {
+                long window = empty & offset(empty, -position) & offset(empty, Constants.WIN_COINS_NEEDED - position);
+                for (int other = 1; other < Constants.WIN_COINS_NEEDED; other++) {
+                    if (other != position) {
+                        window &= offset(ours, other - position);
+                    }
+                }
+                match |= window;
             }
-            return K == 0;
+            return match;
         }
 
-        private int countPieces(Player player) {
-            int count = 0;
-            for (int i = 0; i < Constants.DIMS; i++) {
-                for (int j = 0; j < Constants.DIMS; j++) {
-                    if (board[i][j] == player) {
-                        count++;
+        /**
+         * Returns the empty bits that make an open three, i.e. a window of 6 through the bit with both ends empty, and 2
+         * of our pieces and one more empty intersection on the 3 other inner intersections. An open three threatens to
+         * become an open four
+         */
+        public static long matchOpenThree(long ours, long empty) {
+            long match = 0;
+            for (int position = 1; position < Constants.WIN_COINS_NEEDED; position++) {
+                for (int gap = 1; gap < Constants.WIN_COINS_NEEDED; gap++) {
+                    if (gap == position) {
+                        continue;
+                    }
+                    long window = empty & offset(empty, -position) & offset(empty, Constants.WIN_COINS_NEEDED - position)
+                            & offset(empty, gap - position);
+                    for (int other = 1; other < Constants.WIN_COINS_NEEDED; other++) {
+                        if (other != position && other != gap) {
+                            window &= offset(ours, other - position);
+                        }
                     }
+                    match |= window;
                 }
             }
-            return count;
+            return match;
         }
 
-        private void tryMove(Move move) {
-            placePiece(move);
-            removeCapturedPieces(move);
-            move.commit();
+        /**
+         * Returns the bits from which a capture is possible in the given step: the bit itself is empty, the next two
+         * intersections are the opponent's and the third one is ours
+         */
+        public static long matchCapture(long ours, long theirs, long empty, int step) {
+            return empty & ahead(theirs, 1, step) & ahead(theirs, 2, step) & ahead(ours, 3, step);
         }
 
-        private void undoTryMove(Move move) {
-            removePiece(move);
-            placeCapturedPieces(move);
-            move.revoke();
+        /**
+         * Returns the bits that start an open K in the given step. An open K starting at an intersection has K of our
+         * pieces from there onwards, and the intersections K + 1 to 5 steps away must all be empty
+         */
+        public static long matchOpenK(long ours, long empty, int K, int step) {
+            long match = ours;
+            for (int distance = 1; distance < K; distance++) {
+                match &= ahead(ours, distance, step);
+            }
+            for (int distance = K + 1; distance <= Constants.WIN_COINS_NEEDED; distance++) {
+                match &= ahead(empty, distance, step);
+            }
+            return match;
         }
 
-        private void placePiece(Move move) {
-            if (move.isApplied()) {
-                throw new IllegalArgumentException("Cannot place piece for an applied move");
+        /**
+         * Returns the number of consecutive set bits in the line that include the given bit
+         */
+        public static int runLength(long line, int bit) {
+            if ((line & 1L << bit) == 0) {
+                return 0;
             }
-
-            /* Place our piece */
-            Player player = move.getPlayer();
-            int i = move.getI();
-            int j = move.getJ();
-            board[i][j] = player;
+            int forward = Long.numberOfTrailingZeros(~(line >>> bit));
+            int backward = Long.numberOfLeadingZeros(~(line << (63 - bit)));
+            return forward + backward - 1;
         }
 
-        private void removeCapturedPieces(Move move) {
-            if (move.isApplied()) {
-                throw new IllegalArgumentException("Cannot remove captured pieces for an applied move");
+        /**
+         * Returns true if there are at least K consecutive set bits in the line that include the given bit
+         */
+        public static boolean hasRunThrough(long line, int bit, int K) {
+            long starts = line;
+            for (int distance = 1; distance < K; distance++) {
+                starts &= line >>> distance;
             }
-
-            /* Apply captures */
-            int i = move.getI();
-            int j = move.getJ();
-
-            int nextI;
-            int nextJ;
-            for (Direction captureDirection : move.getCaptureDirections()) {
-                nextI = captureDirection.moveI(i, 1);
-                nextJ = captureDirection.moveJ(j, 1);
-                board[nextI][nextJ] = Player.NONE;
-
-                nextI = captureDirection.moveI(i, 2);
-                nextJ = captureDirection.moveJ(j, 2);
-                board[nextI][nextJ] = Player.NONE;
+            long window = (1L << (bit + 1)) - 1;
+            if (bit >= K) {
+                window &= -1L << (bit - K + 1);
             }
+            return (starts & window) != 0;
         }
+    }
 
-        private void removePiece(Move move) {
-            if (!move.isApplied()) {
-                throw new IllegalArgumentException("Cannot remove the piece of an unapplied move");
-            }
+    /**
+     * Line scores of the evaluation by table lookup. Every pattern the evaluation scores fits in a window of 6
+     * intersections: a possible capture (empty, 2 of theirs, ours, in either direction), and an open K for K = 2, 3
+     * and 4 (K of ours, any intersection, then empty ones up to 5 steps away, in either direction), see the matchers
+     * of BitBoard. A line is cut into chunks of 8 intersections, 3 apart, and the score of the patterns whose window
+     * starts in the first 3 intersections of a chunk is looked up by the chunk's contents. The index of a chunk holds
+     * our 8 bits above their 8 bits, with off board intersections set in both
+     */
+    public static class LinePatterns {
 
-            int i = move.getI();
-            int j = move.getJ();
+        private static final int POSSIBLE_CAPTURE_SCORE = 10_000;
 
-            /* Remove our piece */
-            board[i][j] = Player.NONE;
-        }
+        /* Indexed by K */
+        private static final int[] OPEN_K_SCORES = {0, 0, 10, 100, 1_000};
 
-        private void placeCapturedPieces(Move move) {
-            if (!move.isApplied()) {
-                throw new IllegalArgumentException("Cannot add the captured pieces of an unapplied move");
-            }
+        private static final int CHUNK_SIZE = 8;
 
-            Player player = move.getPlayer();
-            int i = move.getI();
-            int j = move.getJ();
+        private static final int CHUNK_STARTS = 3;
 
-            /* Undo captures */
-            int nextI;
-            int nextJ;
-            for (Direction captureDirection : move.getCaptureDirections()) {
-                nextI = captureDirection.moveI(i, 1);
-                nextJ = captureDirection.moveJ(j, 1);
-                board[nextI][nextJ] = player.opponent();
+        /* The shortest windows, those of captures, hold 4 intersections and cannot start any later on a line */
+        private static final int LAST_START = Constants.DIMS - 4;
+
+        private static final int[] SCORES = new int[1 << 2 * CHUNK_SIZE];
 
-                nextI = captureDirection.moveI(i, 2);
-                nextJ = captureDirection.moveJ(j, 2);
-                board[nextI][nextJ] = player.opponent();
+        static {
+            long starts = (1L << CHUNK_STARTS) - 1;
+            for (int index = 0; index < SCORES.length; index++) {
+                long both = index >>> CHUNK_SIZE;
+                long other = index & (1 << CHUNK_SIZE) - 1;
+                long ours = both & ~other;
+                long theirs = other & ~both;
+                long empty = ~(both | other) & (1 << CHUNK_SIZE) - 1;
+
+                /* Backward matches are anchored at the far end of their window, 3 or 5 steps from its start */
+                int captures = Long.bitCount(BitBoard.matchCapture(ours, theirs, empty, +1) & starts)
+                        + Long.bitCount(BitBoard.matchCapture(ours, theirs, empty, -1) >>> 3 & starts);
+                int score = POSSIBLE_CAPTURE_SCORE * captures;
+                for (int K = 2; K < OPEN_K_SCORES.length; K++) {
+                    int openKs = Long.bitCount(BitBoard.matchOpenK(ours, empty, K, +1) & starts)
+                            + Long.bitCount(BitBoard.matchOpenK(ours, empty, K, -1) >>> 5 & starts);
+                    score += OPEN_K_SCORES[K] * openKs;
+                }
+                SCORES[index] = score;
             }
         }
 
+        private LinePatterns() {
+        }
+
         /**
-         * A player has one if they have
-         *     1. Made the required number of captures
-         *     2. Made a 5-in-a-row
+         * Returns the score of our possible captures and open Ks on a line
          */
-        private boolean isWinningMove(Move move, int capturesSoFar) {
-            /* Check if the player has made at least 5 captures with this move */
-            if (capturesSoFar >= Constants.WIN_CAPTURES_NEEDED) {
-                return true;
+        public static int score(long ours, long theirs, long offLine) {
+            long both = ours | offLine;
+            long other = theirs | offLine;
+            int mask = (1 << CHUNK_SIZE) - 1;
+            int score = 0;
+            for (int start = 0; start <= LAST_START; start += CHUNK_STARTS) {
+                score += SCORES[((int) (both >>> start) & mask) << CHUNK_SIZE | (int) (other >>> start) & mask];
             }
+            return score;
+        }
+    }
 
-            /* Check if the player has a 5-in-a-row through this move */
-            for (int index = 0; index < 4; index++) {
-                Direction direction = Direction.values()[index];
-                int front = 0;
-                int back = 0;
+    /**
+     * The four line orientations of the board. Every intersection lies on exactly one line per axis, and is addressed
+     * on that line by a bit index that grows by one for every step along the axis
+     */
+    public enum Axis {
 
-                int i = direction.moveI(move.getI(), 1);
-                int j = direction.moveJ(move.getJ(), 1);
-                while (!outOfBounds(i, j) && board[i][j] == move.getPlayer()) {
-                    front++;
-                    i = direction.moveI(i, 1);
-                    j = direction.moveJ(j, 1);
-                }
+        ROW(Constants.DIMS),
+        COLUMN(Constants.DIMS),
+        DIAGONAL(2 * Constants.DIMS - 1),
+        ANTI_DIAGONAL(2 * Constants.DIMS - 1);
 
-                i = direction.moveI(move.getI(), -1);
-                j = direction.moveJ(move.getJ(), -1);
-                while (!outOfBounds(i, j) && board[i][j] == move.getPlayer()) {
-                    back++;
-                    i = direction.moveI(i, -1);
-                    j = direction.moveJ(j, -1);
-                }
+        /* values() copies the array on every call, iterate over this one instead */
+        public static final Axis[] ALL = values();
 
-                if (front + back + 1 >= Constants.WIN_COINS_NEEDED) {
-                    return true;
+        private final int lineCount;
+
+        /* lineIndex and bitIndex of every cell index (i * DIMS + j), so that the hot paths look them up by cell */
+        private final int[] cellLines = new int[Constants.DIMS * Constants.DIMS];
+
+        private final int[] cellBits = new int[Constants.DIMS * Constants.DIMS];
+
+        static {
+            for (Axis axis : ALL) {
+                for (int cell = 0; cell < Constants.DIMS * Constants.DIMS; cell++) {
+                    axis.cellLines[cell] = axis.lineIndex(cell / Constants.DIMS, cell % Constants.DIMS);
+                    axis.cellBits[cell] = axis.bitIndex(cell / Constants.DIMS, cell % Constants.DIMS);
                 }
             }
+        }
 
-            return false;
+        Axis(int lineCount) {
+            this.lineCount = lineCount;
         }
 
-        /**
-         * The game is tied if no more intersections are left to make moves onto
-         * IMPORTANT: This must be called after isWinningMove, as the last move on the board can be a winning move
-         */
-        public boolean isGameTied() {
-            int count = 0;
-            for (int i = 0; i < Constants.DIMS; i++) {
-                for (int j = 0; j < Constants.DIMS; j++) {
-                    if (board[i][j] != Player.NONE) {
-                        count++;
-                    }
-                }
+        public int lineIndex(int cell) {
+            return cellLines[cell];
+        }
+
+        public int bitIndex(int cell) {
+            return cellBits[cell];
+        }
+
+        public int lineIndex(int i, int j) {
+            switch (this) {
+                case ROW:
+                    return i;
+                case COLUMN:
+                    return j;
+                case DIAGONAL:
+                    return j - i + Constants.DIMS - 1;
+                default:
+                    return i + j;
             }
-            return count == Constants.DIMS * Constants.DIMS;
+        }
+
+        public int bitIndex(int i, int j) {
+            return this == ROW ? j : i;
         }
 
         /**
-         * A capture occurs when we surround 2 consecutive opponent pieces by 2 of our own (i.e. X00X or 0XX0)
-         * This method returns true if a capture can occur in a given direction if we place our piece on (i, j).
-         * Let target be our own piece, 3 intersections away from (i, j)
-         *     1. The coordinates to the target will be (i + 3 * direction-delta, j + 3 * direction-delta)
-         *     2. If the current coordinates aren't empty
-         *     3. If the target coordinates are out of bounds, return false
-         *     4. Else if the piece on the target coordinates isn't ours, return false
-         *     5. Else if the piece on the target coordinates is ours, if both the middle pieces are the opponent's, return true
-         */
-        private boolean checkPossibleCapture(Player[][] board, Player player, int i, int j, Direction direction) {
-            int targetI = direction.moveI(i, 3);
-            int targetJ = direction.moveJ(j, 3);
-
-            if (board[i][j] != Player.NONE) {
-                return false;
-            }
-            if (outOfBounds(targetI, targetJ)) {
-                return false;
-            }
-            if (board[targetI][targetJ] != player) {
-                return false;
+         * Returns the cell index (i * DIMS + j) of a bit on a line, the reverse of lineIndex and bitIndex
+         */
+        public int cellIndex(int line, int bit) {
+            switch (this) {
+                case ROW:
+                    return line * Constants.DIMS + bit;
+                case COLUMN:
+                    return bit * Constants.DIMS + line;
+                case DIAGONAL:
+                    return bit * Constants.DIMS + bit + line - (Constants.DIMS - 1);
+                default:
+                    return bit * Constants.DIMS + line - bit;
             }
+        }
 
-            boolean firstCaptured = board[direction.moveI(i, 1)][direction.moveJ(j, 1)] == player.opponent();
-            boolean secondCaptured = board[direction.moveI(i, 2)][direction.moveJ(j, 2)] == player.opponent();
-            return firstCaptured && secondCaptured;
+        public int getLineCount() {
+            return lineCount;
         }
+    }
 
-        private boolean outOfBounds(int i, int j) {
-            return i < 0 || j < 0 || i >= Constants.DIMS || j >= Constants.DIMS;
+    /**
+     * The 8 symmetries of the square board, the rotations and the reflections, acting on cell indexes (i * DIMS + j)
+     */
+    public enum Symmetry {
+
+        IDENTITY,
+        ROTATE_90,
+        ROTATE_180,
+        ROTATE_270,
+        FLIP_ROWS,
+        FLIP_COLUMNS,
+        TRANSPOSE,
+        ANTI_TRANSPOSE;
+
+        /* values() copies the array on every call, iterate over this one instead */
+        public static final Symmetry[] ALL = values();
+
+        public int transform(int cell) {
+            int last = Constants.DIMS - 1;
+            int i = cell / Constants.DIMS;
+            int j = cell % Constants.DIMS;
+            switch (this) {
+                case IDENTITY:
+                    return cell;
+                case ROTATE_90:
+                    return j * Constants.DIMS + last - i;
+                case ROTATE_180:
+                    return (last - i) * Constants.DIMS + last - j;
+                case ROTATE_270:
+                    return (last - j) * Constants.DIMS + i;
+                case FLIP_ROWS:
+                    return (last - i) * Constants.DIMS + j;
+                case FLIP_COLUMNS:
+                    return i * Constants.DIMS + last - j;
+                case TRANSPOSE:
+                    return j * Constants.DIMS + i;
+                default:
+                    return (last - j) * Constants.DIMS + last - i;
+            }
+        }
+
+        public Symmetry inverse() {
+            switch (this) {
+                case ROTATE_90:
+                    return ROTATE_270;
+                case ROTATE_270:
+                    return ROTATE_90;
+                default:
+                    return this;
+            }
         }
     }
 
@@ -732,13 +4533,39 @@ public class homework {
         W(0,-1),
         NW(-1, -1);
 
+        /* values() copies the array on every call, iterate over this one instead */
+        public static final Direction[] ALL = values();
+
         private final int deltaI;
 
         private final int deltaJ;
 
+        private final Axis axis;
+
+        private final int step;
+
+        private final int offset;
+
         Direction(int deltaI, int deltaJ) {
             this.deltaI = deltaI;
             this.deltaJ = deltaJ;
+            this.offset = deltaI * Constants.DIMS + deltaJ;
+            if (deltaI == 0) {
+                this.axis = Axis.ROW;
+                this.step = deltaJ;
+            }
+            else if (deltaJ == 0) {
+                this.axis = Axis.COLUMN;
+                this.step = deltaI;
+            }
+            else if (deltaI == deltaJ) {
+                this.axis = Axis.DIAGONAL;
+                this.step = deltaI;
+            }
+            else {
+                this.axis = Axis.ANTI_DIAGONAL;
+                this.step = deltaI;
+            }
         }
 
         public int moveI(int i, int distance) {
@@ -763,13 +4590,47 @@ public class homework {
             return deltaJ;
         }
 
+        public Axis getAxis() {
+            return axis;
+        }
+
+        /**
+         * Returns +1 if the direction walks towards the higher bits of its axis' lines, -1 otherwise
+         */
+        public int getStep() {
+            return step;
+        }
+
+        /**
+         * Returns the change of the cell index (i * DIMS + j) for one step in the direction. Stepping by it does not
+         * detect the edges of the board, so the caller must know the target cell is on it
+         */
+        public int getOffset() {
+            return offset;
+        }
+
         private boolean outOfBounds(int p) {
             return p < 0 || p >= Constants.DIMS;
         }
     }
 
+    /**
+     * A move of the player on intersection (i, j), along with the directions in which it captures. The search works on
+     * moves encoded into a single int instead, see {@link #encode()}
+     */
     public static class Move {
 
+        /* Encoded moves are never negative */
+        public static final int NONE = -1;
+
+        private static final int CELL_BITS = 9;
+
+        private static final int CELL_MASK = (1 << CELL_BITS) - 1;
+
+        private static final int CAPTURE_SHIFT = CELL_BITS;
+
+        private static final int PLAYER_SHIFT = CAPTURE_SHIFT + 8;
+
         private final Player player;
 
         private final int i;
@@ -822,6 +4683,54 @@ public class homework {
             this.applied = false;
         }
 
+        /**
+         * Returns the intersection of the move as a single index, i * DIMS + j
+         */
+        public int getCell() {
+            return i * Constants.DIMS + j;
+        }
+
+        /**
+         * Packs the move into an int: the cell in the low 9 bits, a bit per capture direction (by Direction ordinal) in
+         * the next 8 bits, and the player's ordinal above them
+         */
+        public int encode() {
+            int captureMask = 0;
+            for (Direction direction : captureDirections) {
+                captureMask |= 1 << direction.ordinal();
+            }
+            return encode(player, getCell(), captureMask);
+        }
+
+        public static int encode(Player player, int cell, int captureMask) {
+            return cell | captureMask << CAPTURE_SHIFT | player.ordinal() << PLAYER_SHIFT;
+        }
+
+        public static Move decode(int move) {
+            List<Direction> captureDirections = new ArrayList<>();
+            for (int mask = getCaptureMask(move); mask != 0; mask &= mask - 1) {
+                captureDirections.add(Direction.ALL[Integer.numberOfTrailingZeros(mask)]);
+            }
+            int cell = getCell(move);
+            return new Move(getPlayer(move), cell / Constants.DIMS, cell % Constants.DIMS, captureDirections);
+        }
+
+        public static int getCell(int move) {
+            return move & CELL_MASK;
+        }
+
+        public static int getCaptureMask(int move) {
+            return (move >>> CAPTURE_SHIFT) & 0xFF;
+        }
+
+        public static int getCaptureCount(int move) {
+            return Integer.bitCount(getCaptureMask(move));
+        }
+
+        public static Player getPlayer(int move) {
+            return Player.PLAYERS[move >>> PLAYER_SHIFT];
+        }
+
         public String getString() {
             return (Constants.DIMS - i) + Constants.columns[j];
         }
@@ -854,6 +4763,24 @@ public class homework {
 
         public static final String BOARD_PATH = "board.txt";
 
+        public static final String OPENING_BOOK_PATH = "openingbook.bin";
+
+        public static final String SEARCH_REPORT_PATH = "searchreport.jsonl";
+
+        /* One in this many evaluate and generateMoves calls is timed */
+        public static final int STATS_SAMPLE_INTERVAL = 64;
+
+        public static final String SEARCH_CACHE_PATH = "searchcache.bin";
+
+        /* Moves between the board checkpoints of a game record */
+        public static final int GAME_RECORD_CHECKPOINT_INTERVAL = 32;
+
+        public static final int PV_MAX_LENGTH = 32;
+
+        public static final String DAEMON_SOCKET_PATH = "pente.sock";
+
+        public static final long DAEMON_WARMUP_MILLIS = 500;
+
         public static final int DIMS = 19;
 
         public static final int WIN_CAPTURES_NEEDED = 5;
@@ -862,6 +4789,77 @@ public class homework {
 
         public static final int MINIMAX_MAX_DEPTH = 2;
 
+        public static final int ITERATIVE_DEEPENING_MAX_DEPTH = 12;
+
+        public static final int EXPECTED_TURNS = 40;
+
+        public static final int MIN_TURNS_TO_GO = 10;
+
+        public static final long TIME_SAFETY_MARGIN_MS = 150;
+
+        public static final int NODES_PER_CLOCK_CHECK = 1024;
+
+        public static final int MAX_PLY = 64;
+
+        public static final int FRONTIER_RADIUS = 1;
+
+        /* Half width of the aspiration window, a quarter of the weight of a capture */
+        public static final long ASPIRATION_WINDOW = 2500;
+
+        public static final int ASPIRATION_WIDENING = 4;
+
+        public static final int ASPIRATION_MIN_DEPTH = 2;
+
+        /* Plies of forcing moves the quiescence search plays beyond the search depth */
+        public static final int QUIESCENCE_MAX_PLY = 6;
+
+        /* Late move reductions apply from this many plies left to search, to the moves from this index on */
+        public static final int LMR_MIN_REMAINING = 2;
+
+        public static final int LMR_MIN_MOVE_INDEX = 3;
+
+        /* The most a quiet move can change the evaluation by: making or spoiling a few capture threats */
+        public static final long FUTILITY_MARGIN = 30_000;
+
+        public static final int VCF_MAX_DEPTH = 15;
+
+        public static final int VCT_MAX_DEPTH = 9;
+
+        public static final long THREAT_SEARCH_MAX_NODES = 50_000;
+
+        public static final double THREAT_SEARCH_TIME_SHARE = 0.1;
+
+        public static final int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+
+        public static final ParallelMode PARALLEL_MODE = ParallelMode.LAZY_SMP;
+
+        public static final Engine ENGINE = Engine.MINIMAX;
+
+        /* Weight of the priors against the playout results in the PUCT selection */
+        public static final double MCTS_EXPLORATION = 1.5;
+
+        /* Value of a child that no playout went through yet */
+        public static final double MCTS_FIRST_PLAY_VALUE = 0.5;
+
+        /* A pending playout counts as this many lost visits of each node on its path */
+        public static final int MCTS_VIRTUAL_LOSS = 3;
+
+        /* Prior weight of each pair a move captures, on top of 1 and the square of the run the move makes */
+        public static final float MCTS_CAPTURE_PRIOR = 4;
+
+        public static final int MCTS_PLAYOUT_MAX_PLIES = 40;
+
+        /* Share of the playout moves that take a capture on the lines of the previous move, when there is one */
+        public static final double MCTS_PLAYOUT_CAPTURE_RATE = 0.5;
+
+        public static final int MCTS_MAX_NODES = 1_000_000;
+
+        public static final long ZOBRIST_SEED = 561L;
+
+        public static final int TT_SIZE_LOG2 = 20;
+
+        public static final ReplacementPolicy TT_REPLACEMENT_POLICY = ReplacementPolicy.DEPTH_PREFERRED;
+
         public static final String[] columns = {"A", "B", "C", "D", "E", "F", "G", "H", "J", "K", "L", "M", "N", "O", "P", "Q", "R", "S", "T"};
     }
 
@@ -871,6 +4869,9 @@ public class homework {
         BLACK("b"),
         NONE(".");
 
+        /* The players that can make a move, indexed by their ordinal */
+        public static final Player[] PLAYERS = {WHITE, BLACK};
+
         private final String label;
 
         private static final Map<String, Player> labelsMap = new HashMap<>();